@@ -0,0 +1,288 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConsistencyCheck.java
+ * Cross-checks the ReservationManager's lock-free read paths against its reservation list while
+ * bookings, group bookings, payment outcomes and cancellations run concurrently.
+ *
+ * Compile: javac HotelReservationApp.java ConsistencyCheck.java
+ * Run: java ConsistencyCheck [--seed n]
+ *
+ * Each check gets a generated data directory that is deleted afterwards. Prints one line per
+ * check and exits with status 1 if any of them found a mismatch.
+ */
+public class ConsistencyCheck {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int HORIZON_DAYS = 120;
+    private static final HotelReservationApp.PaymentGateway INSTANT_PAYMENT = amount -> CompletableFuture.completedFuture(true);
+
+    // the manager reports every booking on stdout; results go to the real stdout instead
+    private static final PrintStream report = System.out;
+
+    interface Check {
+        long run(HotelReservationApp.ReservationManager manager, List<HotelReservationApp.Room> rooms, long seed) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--seed")) seed = Long.parseLong(args[++i]);
+            else throw new IllegalArgumentException("Unknown argument: " + args[i]);
+        }
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        // payments that decline at random, completing on another thread, for the group bookings
+        HotelReservationApp.PaymentGateway randomPayment =
+                amount -> CompletableFuture.supplyAsync(() -> ThreadLocalRandom.current().nextInt(4) != 0);
+        boolean ok = check("groupBookings", 200, false, randomPayment, seed, ConsistencyCheck::groupBookings);
+        ok &= check("inventoryCounters", 150, true, INSTANT_PAYMENT, seed, ConsistencyCheck::inventoryCounters);
+        ok &= check("gridMatchesRooms", 300, true, INSTANT_PAYMENT, seed, ConsistencyCheck::gridMatchesRooms);
+        if (!ok) System.exit(1);
+    }
+
+    private static boolean check(String name, int roomCount, boolean mixedCategories, HotelReservationApp.PaymentGateway payments,
+                                 long seed, Check check) throws Exception {
+        Path dir = Files.createTempDirectory("hotel-check");
+        try {
+            HotelReservationApp.Category[] categories = HotelReservationApp.Category.values();
+            List<HotelReservationApp.Room> rooms = new ArrayList<>(roomCount);
+            for (int i = 0; i < roomCount; i++) {
+                HotelReservationApp.Category category = mixedCategories ? categories[i % categories.length] : HotelReservationApp.Category.STANDARD;
+                rooms.add(new HotelReservationApp.Room(100 + i, category, 50));
+            }
+            HotelReservationApp.RecordCodec.saveRooms(dir.resolve("rooms.dat").toString(), rooms);
+
+            HotelReservationApp.ReservationManager manager = new HotelReservationApp.ReservationManager(dir.toString(), payments);
+            manager.loadState();
+            long start = System.nanoTime();
+            long mismatches;
+            try {
+                mismatches = check.run(manager, rooms, seed);
+                mismatches += doubleBookings(manager);
+            } finally {
+                manager.close();
+            }
+            report.printf("%-20s %-6s %10d mismatches %8d ms%n", name, mismatches == 0 ? "OK" : "FAILED", mismatches,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return mismatches == 0;
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // Rooms 100+2k and 101+2k are only ever booked together, as one group for the same nights,
+    // and released left first. A grid read while the writers run must therefore never show the
+    // left room taken and the right one free on a night. Afterwards the grid must match the list.
+    private static long groupBookings(HotelReservationApp.ReservationManager manager, List<HotelReservationApp.Room> rooms,
+                                      long seed) throws Exception {
+        int pairs = rooms.size() / 2;
+        LocalDate first = LocalDate.now().plusDays(1);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong torn = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                SplittableRandom rnd = new SplittableRandom(seed * 31 + w);
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < 3000; i++) {
+                        int k = rnd.nextInt(pairs);
+                        LocalDate from = first.plusDays(rnd.nextInt(HORIZON_DAYS / 2));
+                        List<HotelReservationApp.Reservation> group = manager.makeReservations(List.of(
+                                new HotelReservationApp.BookingRequest(100 + 2 * k, "Group " + k, from, from.plusDays(2)),
+                                new HotelReservationApp.BookingRequest(101 + 2 * k, "Group " + k, from, from.plusDays(2))));
+                        if (group != null && group.get(0).status == HotelReservationApp.ReservationStatus.CONFIRMED && rnd.nextInt(3) == 0) {
+                            manager.cancelReservation(group.get(0).reservationId);
+                            manager.cancelReservation(group.get(1).reservationId);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                readers.add(pool.submit(() -> {
+                    while (!done.get()) {
+                        HotelReservationApp.AvailabilityGrid grid = manager.availabilityGrid(first, first.plusDays(HORIZON_DAYS / 2 + 2));
+                        for (int k = 0; k < pairs; k++) {
+                            for (int night = 0; night < grid.nights; night++) {
+                                if (!grid.isFree(2 * k, night) && grid.isFree(2 * k + 1, night)) torn.incrementAndGet();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : writers) f.get();
+            done.set(true);
+            for (Future<?> f : readers) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        // pending payments complete on other threads; wait for the last outcome before comparing
+        while (new ArrayList<>(manager.reservations).stream().anyMatch(r -> r.status == HotelReservationApp.ReservationStatus.PENDING)) Thread.sleep(10);
+        return torn.get() + gridAgainstList(manager, first, first.plusDays(HORIZON_DAYS / 2 + 2));
+    }
+
+    // Single and group bookings with cancellations from several threads, reading the per-night
+    // counters meanwhile (which must stay within the category's size). Afterwards the counters,
+    // the calendars (through the grid) and a recount of the reservation list must all agree.
+    private static long inventoryCounters(HotelReservationApp.ReservationManager manager, List<HotelReservationApp.Room> rooms,
+                                          long seed) throws Exception {
+        LocalDate today = LocalDate.now();
+        HotelReservationApp.Category[] categories = HotelReservationApp.Category.values();
+        Map<HotelReservationApp.Category, Integer> sizes = new EnumMap<>(HotelReservationApp.Category.class);
+        for (HotelReservationApp.Room r : rooms) sizes.merge(r.category, 1, Integer::sum);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong outOfRange = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 1);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                SplittableRandom rnd = new SplittableRandom(seed * 37 + w);
+                writers.add(pool.submit(() -> {
+                    List<String> mine = new ArrayList<>();
+                    for (int i = 0; i < 4000; i++) {
+                        LocalDate from = today.plusDays(rnd.nextInt(HORIZON_DAYS));
+                        LocalDate to = from.plusDays(1 + rnd.nextInt(5));
+                        if (rnd.nextBoolean()) {
+                            HotelReservationApp.Reservation r = manager.makeReservation(rooms.get(rnd.nextInt(rooms.size())).id, "Guest", from, to);
+                            if (r != null) mine.add(r.reservationId);
+                        } else {
+                            List<HotelReservationApp.Reservation> group = manager.makeReservations(List.of(
+                                    new HotelReservationApp.BookingRequest(rooms.get(rnd.nextInt(rooms.size())).id, "Group", from, to),
+                                    new HotelReservationApp.BookingRequest(rooms.get(rnd.nextInt(rooms.size())).id, "Group", from, to)));
+                            if (group != null) for (HotelReservationApp.Reservation r : group) mine.add(r.reservationId);
+                        }
+                        if (!mine.isEmpty() && rnd.nextInt(3) == 0) manager.cancelReservation(mine.remove(rnd.nextInt(mine.size())));
+                    }
+                    return null;
+                }));
+            }
+            Future<?> reader = pool.submit(() -> {
+                while (!done.get()) {
+                    for (HotelReservationApp.Category c : categories) {
+                        for (int free : manager.availableRoomsPerNight(c, today, today.plusDays(HORIZON_DAYS + 6))) {
+                            if (free < 0 || free > sizes.get(c)) outOfRange.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            });
+            for (Future<?> f : writers) f.get();
+            done.set(true);
+            reader.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        long mismatches = outOfRange.get();
+        LocalDate to = today.plusDays(HORIZON_DAYS + 6);
+        List<HotelReservationApp.Reservation> all = new ArrayList<>(manager.reservations);
+        for (HotelReservationApp.Category c : categories) {
+            int[] counted = manager.availableRoomsPerNight(c, today, to);
+            HotelReservationApp.AvailabilityGrid grid = manager.availabilityGrid(today, to, c);
+            int[] recounted = new int[counted.length];
+            Arrays.fill(recounted, sizes.get(c));
+            for (HotelReservationApp.Reservation r : all) {
+                if (!r.status.holdsRoom() || rooms.get(r.roomId - 100).category != c) continue;
+                for (long day = r.checkIn.toEpochDay(); day < r.checkOut.toEpochDay(); day++) {
+                    long night = day - today.toEpochDay();
+                    if (night >= 0 && night < recounted.length) recounted[(int) night]--;
+                }
+            }
+            for (int night = 0; night < counted.length; night++) {
+                if (counted[night] != recounted[night] || grid.freeRooms(night) != recounted[night]) mismatches++;
+            }
+        }
+        return mismatches + gridAgainstList(manager, today, to);
+    }
+
+    // Bookings spread from the past into the future, then grids over random ranges (inside and
+    // outside the calendar window, all rooms or one category) compared night by night with
+    // isRoomAvailable, and each night's free-room count with the grid's own cells.
+    private static long gridMatchesRooms(HotelReservationApp.ReservationManager manager, List<HotelReservationApp.Room> rooms,
+                                         long seed) {
+        LocalDate today = LocalDate.now();
+        HotelReservationApp.Category[] categories = HotelReservationApp.Category.values();
+        SplittableRandom rnd = new SplittableRandom(seed * 41);
+        for (int i = 0; i < 6000; i++) {
+            LocalDate from = today.plusDays(rnd.nextInt(1000) - 200);
+            manager.makeReservation(rooms.get(rnd.nextInt(rooms.size())).id, "Guest", from, from.plusDays(1 + rnd.nextInt(6)));
+        }
+        long mismatches = 0;
+        for (int q = 0; q < 300; q++) {
+            LocalDate from = today.plusDays(rnd.nextInt(1100) - 300);
+            int nights = rnd.nextInt(140);
+            HotelReservationApp.Category[] wanted = rnd.nextBoolean()
+                    ? new HotelReservationApp.Category[0] : new HotelReservationApp.Category[]{categories[rnd.nextInt(categories.length)]};
+            HotelReservationApp.AvailabilityGrid grid = manager.availabilityGrid(from, from.plusDays(nights), wanted);
+            for (int night = 0; night < nights; night++) {
+                int free = 0;
+                for (int row = 0; row < grid.rooms(); row++) {
+                    boolean available = manager.isRoomAvailable(grid.roomId(row), from.plusDays(night), from.plusDays(night + 1));
+                    if (grid.isFree(row, night) != available) mismatches++;
+                    if (grid.isFree(row, night)) free++;
+                }
+                if (free != grid.freeRooms(night)) mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    // Cells of a grid over [from, to) that disagree with the nights held in the reservation list
+    private static long gridAgainstList(HotelReservationApp.ReservationManager manager, LocalDate from, LocalDate to) {
+        HotelReservationApp.AvailabilityGrid grid = manager.availabilityGrid(from, to);
+        Map<Integer, Integer> rows = new HashMap<>();
+        for (int row = 0; row < grid.rooms(); row++) rows.put(grid.roomId(row), row);
+        boolean[][] held = new boolean[grid.rooms()][grid.nights];
+        for (HotelReservationApp.Reservation r : new ArrayList<>(manager.reservations)) {
+            if (!r.status.holdsRoom()) continue;
+            for (long day = r.checkIn.toEpochDay(); day < r.checkOut.toEpochDay(); day++) {
+                long night = day - from.toEpochDay();
+                if (night >= 0 && night < grid.nights) held[rows.get(r.roomId)][(int) night] = true;
+            }
+        }
+        long mismatches = 0;
+        for (int row = 0; row < grid.rooms(); row++) {
+            for (int night = 0; night < grid.nights; night++) {
+                if (held[row][night] == grid.isFree(row, night)) mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    // Pairs of stays in the reservation list that hold the same room on the same night
+    private static long doubleBookings(HotelReservationApp.ReservationManager manager) {
+        List<HotelReservationApp.Reservation> held = new ArrayList<>();
+        for (HotelReservationApp.Reservation r : new ArrayList<>(manager.reservations)) {
+            if (r.status.holdsRoom()) held.add(r);
+        }
+        held.sort(Comparator.comparingInt((HotelReservationApp.Reservation r) -> r.roomId)
+                .thenComparing(r -> r.checkIn));
+        long overlaps = 0;
+        LocalDate heldUntil = null; // latest check-out so far in the current room
+        for (int i = 0; i < held.size(); i++) {
+            HotelReservationApp.Reservation r = held.get(i);
+            if (i == 0 || held.get(i - 1).roomId != r.roomId) heldUntil = r.checkOut;
+            else if (r.checkIn.isBefore(heldUntil)) overlaps++;
+            if (r.checkOut.isAfter(heldUntil)) heldUntil = r.checkOut;
+        }
+        return overlaps;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+}
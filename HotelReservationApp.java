@@ -1,26 +1,113 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * HotelReservationApp.java
- * Single-file console hotel reservation system using OOP and file I/O (serialization).
+ * Single-file hotel reservation system (console or HTTP/JSON) using OOP, with rooms and
+ * reservations kept in binary data files (a memory-mapped store for reservations).
  *
  * Save as: HotelReservationApp.java
  * Compile: javac HotelReservationApp.java
  * Run: java HotelReservationApp
+ * Run as an HTTP/JSON server instead of the console: java HotelReservationApp --http [port]
+ * Add --lazy-history to keep only current and future bookings in memory (faster start on a long history).
+ * Add --archive to move finished and long-inactive bookings into the compressed archive at startup.
+ * Serve several hotels, each with its data under hotels/<hotel id>:
+ *   java HotelReservationApp --hotels paris-1:Paris,paris-2:Paris,rome-1:Rome --http [port]
  */
 public class HotelReservationApp {
 
     // ---------- Entry point ----------
     public static void main(String[] args) {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean lazyHistory = options.remove("--lazy-history");
+        boolean archiveOnLoad = options.remove("--archive");
+        int hotelsAt = options.indexOf("--hotels");
+        if (hotelsAt >= 0) {
+            if (hotelsAt + 1 == options.size()) {
+                System.err.println("--hotels needs a list of hotel:city pairs.");
+                return;
+            }
+            String hotels = options.remove(hotelsAt + 1);
+            options.remove(hotelsAt);
+            serveHotelGroup(hotels, options, lazyHistory, archiveOnLoad);
+            return;
+        }
         ReservationManager manager = new ReservationManager();
-        manager.loadState();               // load rooms/reservations from disk (or create sample data)
+        manager.setLazyHistory(lazyHistory);
+        manager.setArchiveOnLoad(archiveOnLoad);
+        if (!manager.loadState()) {        // load rooms/reservations from disk (or create sample data)
+            System.err.println("Fix or restore the damaged data file and start again.");
+            return;
+        }
+        if (!options.isEmpty() && options.get(0).equals("--http")) {
+            int port = options.size() > 1 ? Integer.parseInt(options.get(1)) : 8080;
+            try {
+                new HttpFrontEnd(manager, port).start();
+                System.out.println("Serving on http://localhost:" + port + "/");
+            } catch (IOException e) {
+                System.err.println("Failed to start HTTP server: " + e.getMessage());
+            }
+            return;
+        }
         ConsoleUI ui = new ConsoleUI(manager);
         ui.run();
     }
 
+    // Several hotels ("hotel:city,hotel:city"), one shard each under hotels/, served over HTTP
+    private static void serveHotelGroup(String hotels, List<String> options, boolean lazyHistory, boolean archiveOnLoad) {
+        if (options.isEmpty() || !options.get(0).equals("--http")) {
+            System.err.println("A hotel group is served over HTTP: add --http [port].");
+            return;
+        }
+        Map<String, String> cityByHotel = new LinkedHashMap<>();
+        for (String pair : hotels.split(",")) {
+            int colon = pair.indexOf(':');
+            if (colon <= 0) {
+                System.err.println("Expected hotel:city, got: " + pair);
+                return;
+            }
+            cityByHotel.put(pair.substring(0, colon).trim(), pair.substring(colon + 1).trim());
+        }
+        HotelGroup group = new HotelGroup("hotels", new PaymentSimulator());
+        group.setLazyHistory(lazyHistory);
+        group.setArchiveOnLoad(archiveOnLoad);
+        if (!group.open(cityByHotel)) {
+            if (group.hotels().isEmpty()) {
+                System.err.println("Fix or restore the damaged data files and start again.");
+                return;
+            }
+            System.err.println("Serving the other hotels; fix or restore the damaged data files and restart.");
+        }
+        int port = options.size() > 1 ? Integer.parseInt(options.get(1)) : 8080;
+        try {
+            new HttpFrontEnd(group, port).start();
+            System.out.println("Serving " + group.hotels().size() + " hotels on http://localhost:" + port + "/hotels");
+        } catch (IOException e) {
+            System.err.println("Failed to start HTTP server: " + e.getMessage());
+        }
+    }
+
     // ---------- Enums ----------
     enum Category {
         STANDARD, DELUXE, SUITE;
@@ -37,7 +124,13 @@ public class HotelReservationApp {
     }
 
     enum ReservationStatus {
-        CONFIRMED, CANCELLED, FAILED_PAYMENT
+        // stored by ordinal: append new statuses at the end
+        CONFIRMED, CANCELLED, FAILED_PAYMENT, PENDING;
+
+        // Confirmed stays, and stays whose payment is still running, keep the room
+        public boolean holdsRoom() {
+            return this == CONFIRMED || this == PENDING;
+        }
     }
 
     // ---------- Models ----------
@@ -67,7 +160,8 @@ public class HotelReservationApp {
         LocalDate checkIn;
         LocalDate checkOut;
         double amount;
-        ReservationStatus status;
+        volatile ReservationStatus status; // changed under the room's lock, read without it
+        transient int slot = -1; // record position in the ReservationStore, once stored
 
         public Reservation(String reservationId, int roomId, String guestName,
                            LocalDate checkIn, LocalDate checkOut, double amount, ReservationStatus status) {
@@ -87,36 +181,346 @@ public class HotelReservationApp {
         }
     }
 
+    // One stay in a group booking
+    static class BookingRequest {
+        final int roomId;
+        final String guestName;
+        final LocalDate checkIn;
+        final LocalDate checkOut;
+
+        public BookingRequest(int roomId, String guestName, LocalDate checkIn, LocalDate checkOut) {
+            this.roomId = roomId;
+            this.guestName = guestName;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+        }
+    }
+
     // ---------- Manager (business logic + persistence) ----------
+    // Safe for concurrent use once loadState() has returned. Each room has its own lock, held while
+    // its stays are checked and changed, so bookings for different rooms never contend; the other
+    // indexes are concurrent collections.
     static class ReservationManager {
-        private final String ROOMS_FILE = "rooms.dat";
-        private final String RES_FILE = "reservations.dat";
+        private final String ROOMS_FILE;
+        private final String RES_FILE;
+        private final String GUESTS_FILE;
+        private final String GUEST_INDEX_FILE; // only kept with lazy history
+        private final String ARCHIVE_FILE;
+
+        // Cancelled and failed bookings made longer ago than this are archived even if their stay is ahead
+        static final int ARCHIVE_INACTIVE_DAYS = 30;
 
         List<Room> rooms = new ArrayList<>();
-        List<Reservation> reservations = new ArrayList<>();
-        Random random = new Random();
+        List<Reservation> reservations = Collections.synchronizedList(new ArrayList<>());
+        final ReservationIdGenerator idGenerator = new ReservationIdGenerator();
+        final PaymentGateway paymentGateway;
+
+        // Reservations are written in place: appended on booking, status byte updated on change
+        private ReservationStore store;
+        // Makes store changes durable, one fsync per batch of concurrent commits
+        private GroupCommitter committer;
+
+        // First reservation recorded under each id (ids from before unique ids may repeat)
+        private final Map<String, Reservation> reservationsById = new ConcurrentHashMap<>();
+
+        // Reservations per case-folded guest name
+        private final Map<String, List<Reservation>> reservationsByGuest = new ConcurrentHashMap<>();
+
+        // Every guest name in the store, case-folded to the first spelling seen; sorted so a name
+        // prefix maps to a key range
+        private final ConcurrentSkipListMap<String, String> guestNames = new ConcurrentSkipListMap<>();
+
+        // With lazy history only pending bookings and stays that have not ended yet are loaded;
+        // older records stay in the store and are read on demand. Loaded records are kept here by
+        // store slot, so every lookup of a record returns the same object.
+        private boolean lazyHistory;
+        private final Map<Integer, Reservation> residentBySlot = new ConcurrentHashMap<>();
+
+        // Reservations moved out of the store; read-only, and only the batches whose index may
+        // hold a match are read
+        private ReservationArchive archive;
+        private boolean archiveOnLoad;
+
+        private final Map<Integer, ReentrantLock> roomLocks = new ConcurrentHashMap<>();
+
+        // Stays holding each room, keyed by check-in epoch day. Stays holding a room never overlap,
+        // so ordering by check-in also orders them by check-out.
+        private final Map<Integer, TreeMap<Long, Reservation>> roomSchedules = new ConcurrentHashMap<>();
+
+        // Held nights per room as bitsets over a rolling window starting at calendarBase.
+        // Queries that fall outside the window are answered from roomSchedules instead.
+        private final Map<Integer, OccupancyCalendar> calendars = new ConcurrentHashMap<>();
+        private volatile long calendarBase = Long.MIN_VALUE;
+
+        // Immutable copies of the calendars that searches read without taking any lock, together
+        // with the held rooms per category and night they add up to. Writers publish a new
+        // snapshot, holding the locks of the rooms they changed, once a whole booking, payment
+        // outcome or cancellation has been applied, so readers never see half of one. Indexed by
+        // the rooms' registry indexes.
+        private final AtomicReference<AvailabilitySnapshot> availability =
+                new AtomicReference<>(new AvailabilitySnapshot(new RoomRegistry(Collections.emptyList())));
+
+        // Rooms by id, rebuilt with the other indexes
+        private volatile RoomRegistry roomRegistry = new RoomRegistry(Collections.emptyList());
+        // Rooms per category in price order, rebuilt with the other indexes
+        private volatile RoomCatalog roomCatalog = new RoomCatalog(Collections.emptyList());
+
+        public ReservationManager() {
+            this(new PaymentSimulator());
+        }
+
+        public ReservationManager(PaymentGateway paymentGateway) {
+            this(null, paymentGateway);
+        }
+
+        // Keep this manager's data files in `dataDir` (null for the working directory)
+        public ReservationManager(String dataDir, PaymentGateway paymentGateway) {
+            this.ROOMS_FILE = new File(dataDir, "rooms.dat").getPath();
+            this.RES_FILE = new File(dataDir, "reservations.dat").getPath();
+            this.GUESTS_FILE = new File(dataDir, "guests.dat").getPath();
+            this.GUEST_INDEX_FILE = new File(dataDir, "guests.idx").getPath();
+            this.ARCHIVE_FILE = new File(dataDir, "reservations.archive").getPath();
+            this.paymentGateway = paymentGateway;
+        }
+
+        // Keep only reservations that can still change availability in memory (call before loadState).
+        // Nights before today are then no longer tracked as taken.
+        public void setLazyHistory(boolean lazy) {
+            this.lazyHistory = lazy;
+        }
+
+        // Archive old reservations while loading (call before loadState)
+        public void setArchiveOnLoad(boolean archiveOnLoad) {
+            this.archiveOnLoad = archiveOnLoad;
+        }
 
         // Load rooms & reservations from files. If rooms file not found, create sample rooms.
+        // Files still in the old Java serialization format are read once and rewritten in binary.
+        // Returns false, without writing anything, if a data file exists but cannot be read.
         @SuppressWarnings("unchecked")
-        public void loadState() {
+        public boolean loadState() {
             // load rooms
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ROOMS_FILE))) {
-                rooms = (List<Room>) ois.readObject();
-                System.out.println("Loaded rooms from " + ROOMS_FILE);
-            } catch (Exception e) {
-                System.out.println("Rooms file not found or failed to load. Creating sample rooms...");
+            if (!new File(ROOMS_FILE).exists()) {
+                System.out.println("Rooms file not found. Creating sample rooms...");
                 createSampleRooms();
                 saveRooms();
+            } else {
+                try {
+                    if (RecordCodec.isSerializedFile(ROOMS_FILE)) {
+                        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ROOMS_FILE))) {
+                            rooms = (List<Room>) ois.readObject();
+                        }
+                        saveRooms();
+                        System.out.println("Migrated " + ROOMS_FILE + " to the binary format.");
+                    } else {
+                        rooms = RecordCodec.loadRooms(ROOMS_FILE);
+                    }
+                    System.out.println("Loaded rooms from " + ROOMS_FILE);
+                } catch (Exception e) {
+                    System.err.println("Rooms file " + ROOMS_FILE + " is damaged, leaving it untouched: " + e.getMessage());
+                    return false;
+                }
             }
 
-            // load reservations
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(RES_FILE))) {
-                reservations = (List<Reservation>) ois.readObject();
+            // load reservations (an empty store is created on first run)
+            try {
+                if (!ReservationStore.isStoreFile(RES_FILE) && new File(RES_FILE).length() > 0) {
+                    migrateReservations();
+                }
+                if (archiveOnLoad && new File(RES_FILE).exists()) archiveReservations();
+                store = ReservationStore.open(RES_FILE, GUESTS_FILE);
+                archive = new ReservationArchive(ARCHIVE_FILE, store.archiveGeneration());
+                if (lazyHistory) store.openGuestIndex(GUEST_INDEX_FILE);
+                committer = new GroupCommitter(store);
+                reservations = Collections.synchronizedList(lazyHistory
+                        ? store.readActive(LocalDate.now().toEpochDay()) : store.readAll());
+                idGenerator.advancePast(store.lastIssuedId());
+                for (Reservation r : reservations) {
+                    if (r.status != ReservationStatus.PENDING) continue;
+                    r.status = ReservationStatus.FAILED_PAYMENT; // its payment was cut off by a shutdown
+                    store.updateStatus(r);
+                }
                 System.out.println("Loaded reservations from " + RES_FILE);
             } catch (Exception e) {
-                System.out.println("No existing reservations found or failed to load.");
-                saveReservations(); // create empty file for first run
+                System.err.println("Reservations file " + RES_FILE + " is damaged, leaving it untouched: " + e.getMessage());
+                return false;
+            }
+            rebuildIndexes();
+            return true;
+        }
+
+        // Convert a reservations file written before the store existed (Java serialization) into
+        // a store, swapping the files in once it is complete.
+        @SuppressWarnings("unchecked")
+        private void migrateReservations() throws IOException, ClassNotFoundException {
+            if (!RecordCodec.isSerializedFile(RES_FILE)) throw new IOException("Not a reservation store: " + RES_FILE);
+            List<Reservation> old;
+            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(RES_FILE))) {
+                old = new ArrayList<>((List<Reservation>) ois.readObject());
+            }
+
+            String tmp = RES_FILE + ".tmp", guestsTmp = GUESTS_FILE + ".tmp";
+            Files.deleteIfExists(Paths.get(tmp));
+            Files.deleteIfExists(Paths.get(guestsTmp));
+            try (ReservationStore migrated = ReservationStore.open(tmp, guestsTmp)) {
+                migrated.appendAll(old);
+                migrated.sync();
+            }
+            Files.move(Paths.get(guestsTmp), Paths.get(GUESTS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(Paths.get(tmp), Paths.get(RES_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            RecordCodec.syncDirectory(Paths.get(RES_FILE));
+            System.out.println("Migrated " + old.size() + " reservations to the store format.");
+        }
+
+        // Move stays that ended before today, and cancelled or failed bookings made more than
+        // ARCHIVE_INACTIVE_DAYS ago, from the store into the archive, then compact the store.
+        // Compaction renumbers the store's records, so this only runs inside loadState.
+        // The archive batch is written first under the next archive generation and the compacted
+        // store, which records that generation, is renamed in after it; archive batches newer
+        // than the store's generation are left over from an interrupted run and are dropped.
+        private void archiveReservations() throws IOException {
+            long today = LocalDate.now().toEpochDay();
+            long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(ARCHIVE_INACTIVE_DAYS);
+            List<Reservation> keep = new ArrayList<>(), old = new ArrayList<>();
+            long generation, lastIssued;
+            try (ReservationStore current = ReservationStore.open(RES_FILE, GUESTS_FILE)) {
+                for (Reservation r : current.readAll()) {
+                    boolean inactive = r.status == ReservationStatus.CANCELLED || r.status == ReservationStatus.FAILED_PAYMENT;
+                    boolean archivable = r.status != ReservationStatus.PENDING && (r.checkOut.toEpochDay() < today
+                            || inactive && ReservationIdGenerator.issuedAtMillis(r.reservationId) < cutoff);
+                    (archivable ? old : keep).add(r);
+                }
+                generation = current.archiveGeneration();
+                lastIssued = current.lastIssuedId();
+            }
+            ReservationArchive.discardAfter(ARCHIVE_FILE, generation);
+            if (old.isEmpty()) return;
+
+            ReservationArchive.append(ARCHIVE_FILE, generation + 1, old);
+            String tmp = RES_FILE + ".tmp";
+            Files.deleteIfExists(Paths.get(tmp));
+            try (ReservationStore compacted = ReservationStore.open(tmp, GUESTS_FILE)) {
+                compacted.appendAll(keep);
+                compacted.advanceLastIssuedId(lastIssued);
+                compacted.setArchiveGeneration(generation + 1);
+                compacted.sync();
+            }
+            Files.move(Paths.get(tmp), Paths.get(RES_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            RecordCodec.syncDirectory(Paths.get(RES_FILE));
+            System.out.println("Archived " + old.size() + " reservations to " + ARCHIVE_FILE);
+        }
+
+        private void rebuildIndexes() {
+            reservationsById.clear();
+            reservationsByGuest.clear();
+            guestNames.clear();
+            residentBySlot.clear();
+            roomSchedules.clear();
+            calendars.clear();
+            calendarBase = Long.MIN_VALUE; // calendars are rebuilt on the next query
+            roomRegistry = new RoomRegistry(rooms);
+            roomCatalog = new RoomCatalog(rooms);
+            availability.set(new AvailabilitySnapshot(roomRegistry));
+            if (store != null) {
+                for (String name : store.guestNames()) guestNames.putIfAbsent(foldGuestName(name), name);
+            }
+            for (Reservation r : reservations) {
+                reservationsById.putIfAbsent(r.reservationId, r);
+                indexGuest(r);
+                if (lazyHistory) residentBySlot.put(r.slot, r);
+                if (r.status.holdsRoom()) scheduleStay(r);
+            }
+        }
+
+        private void indexGuest(Reservation r) {
+            String folded = foldGuestName(r.guestName);
+            reservationsByGuest.computeIfAbsent(folded, k -> new CopyOnWriteArrayList<>()).add(r);
+            guestNames.putIfAbsent(folded, r.guestName);
+        }
+
+        // The one in-memory object for the record in `slot`, reading it from the store if needed
+        private Reservation resident(int slot) {
+            return residentBySlot.computeIfAbsent(slot, store::read);
+        }
+
+        private static String foldGuestName(String name) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+
+        private ReentrantLock lockFor(int roomId) {
+            return roomLocks.computeIfAbsent(roomId, k -> new ReentrantLock());
+        }
+
+        // Callers hold the room's lock (or are loading, before the manager is shared)
+        private void scheduleStay(Reservation r) {
+            // zero-night stays (only possible in old data files) cover no night, so they never block a room
+            if (!r.checkIn.isBefore(r.checkOut)) return;
+            roomSchedules.computeIfAbsent(r.roomId, k -> new TreeMap<>()).put(r.checkIn.toEpochDay(), r);
+            OccupancyCalendar cal = calendars.get(r.roomId);
+            if (cal != null) cal.mark(r.checkIn.toEpochDay(), r.checkOut.toEpochDay(), true);
+        }
+
+        private void unscheduleStay(Reservation r) {
+            TreeMap<Long, Reservation> schedule = roomSchedules.get(r.roomId);
+            if (schedule == null || !schedule.remove(r.checkIn.toEpochDay(), r)) return;
+            OccupancyCalendar cal = calendars.get(r.roomId);
+            if (cal != null) cal.mark(r.checkIn.toEpochDay(), r.checkOut.toEpochDay(), false);
+        }
+
+        // Slide the calendar window so it starts at the 64-day block containing today.
+        // Happens once per block, so the calendars are simply rebuilt from the schedules. Each
+        // calendar knows its own window, so rooms can be switched over one at a time; the category
+        // counters are left out of the snapshots until every room has moved, then counted afresh.
+        // Must not be called while holding a room lock.
+        private void ensureCalendarWindow() {
+            long base = Math.floorDiv(Math.floorDiv(System.currentTimeMillis(), 86_400_000L), 64) * 64;
+            if (base == calendarBase) return;
+            synchronized (calendars) {
+                if (base == calendarBase) return;
+                for (Room room : rooms) {
+                    ReentrantLock lock = lockFor(room.id);
+                    lock.lock();
+                    try {
+                        OccupancyCalendar cal = buildCalendar(room.id, base);
+                        calendars.put(room.id, cal);
+                        publish(Collections.singletonList(room.id));
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                availability.updateAndGet(snapshot -> snapshot.withInventory(base));
+                calendarBase = base;
+            }
+        }
+
+        // Copy the rooms' calendars into a new availability snapshot and swap it in; unchanged
+        // parts are shared with the previous one. Callers hold the locks of all these rooms.
+        private void publish(Collection<Integer> roomIds) {
+            RoomRegistry registry = roomRegistry;
+            List<Integer> indexes = new ArrayList<>(roomIds.size());
+            List<OccupancyCalendar> copies = new ArrayList<>(roomIds.size());
+            for (int roomId : roomIds) {
+                int index = registry.indexOf(roomId);
+                OccupancyCalendar cal = calendars.get(roomId);
+                if (index < 0 || cal == null) continue;
+                indexes.add(index);
+                copies.add(cal.copy());
             }
+            if (!indexes.isEmpty()) availability.updateAndGet(snapshot -> snapshot.with(indexes, copies));
+        }
+
+        private OccupancyCalendar buildCalendar(int roomId, long base) {
+            OccupancyCalendar cal = new OccupancyCalendar(base);
+            TreeMap<Long, Reservation> schedule = roomSchedules.get(roomId);
+            if (schedule != null) {
+                // include the stay already running when the window starts
+                Long from = schedule.floorKey(base);
+                for (Reservation r : schedule.tailMap(from != null ? from : base).values()) {
+                    if (r.checkIn.toEpochDay() >= cal.endDay()) break;
+                    cal.mark(r.checkIn.toEpochDay(), r.checkOut.toEpochDay(), true);
+                }
+            }
+            return cal;
         }
 
         private void createSampleRooms() {
@@ -129,196 +533,2408 @@ public class HotelReservationApp {
         }
 
         public void saveRooms() {
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ROOMS_FILE))) {
-                oos.writeObject(rooms);
+            try {
+                RecordCodec.saveRooms(ROOMS_FILE, rooms);
             } catch (IOException e) {
                 System.err.println("Failed to save rooms: " + e.getMessage());
             }
         }
 
+        // Every change is already written to the mapped store; this forces it out to disk
         public void saveReservations() {
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(RES_FILE))) {
-                oos.writeObject(reservations);
+            if (store == null) return;
+            try {
+                store.flush();
             } catch (IOException e) {
                 System.err.println("Failed to save reservations: " + e.getMessage());
             }
         }
 
-        // Search available rooms by category and date range
+        // Flush and release the data files; the manager must not be used afterwards
+        public void close() {
+            if (store == null) return;
+            try {
+                committer.close();
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close reservations: " + e.getMessage());
+            }
+        }
+
+        // Issue the new reservations' ids and add them to the store (in one write), then to the
+        // list and the id and guest indexes. If the store cannot take them, nothing is recorded
+        // and the failure is thrown. Callers have already scheduled the stays that hold a room.
+        private void recordReservations(List<Reservation> batch) throws IOException {
+            if (store == null) {
+                for (Reservation r : batch) r.reservationId = idGenerator.next();
+            } else {
+                // ids are issued while the store is locked, so they reach it in increasing order
+                // (ReservationStore.findById relies on that); the objects are registered under the
+                // same lock, so a history scan that sees the new records also finds them
+                synchronized (store) {
+                    for (Reservation r : batch) r.reservationId = idGenerator.next();
+                    store.appendAll(batch);
+                    if (lazyHistory) for (Reservation r : batch) residentBySlot.put(r.slot, r);
+                }
+                store.advanceLastIssuedId(idGenerator.lastIssued());
+            }
+            for (Reservation r : batch) {
+                reservations.add(r);
+                reservationsById.putIfAbsent(r.reservationId, r);
+                indexGuest(r);
+            }
+        }
+
+        // Throws if the store refuses changes after a failed sync (see ReservationStore.sync)
+        private void storeStatusChanged(Reservation r) throws IOException {
+            if (store != null) store.updateStatus(r);
+        }
+
+        private void storeStatusChanged(List<Reservation> batch) throws IOException {
+            if (store != null) store.updateStatuses(batch);
+        }
+
+        // Completes once every store change made so far is on disk, or exceptionally if the sync failed
+        private CompletableFuture<Void> durable() {
+            if (committer == null) return CompletableFuture.completedFuture(null);
+            return committer.commit().whenComplete((v, e) -> {
+                if (e != null) System.err.println("Failed to save reservations: " + e.getMessage());
+            });
+        }
+
+        // Search available rooms by category and date range, cheapest first
         public List<Room> searchAvailableRooms(Category category, LocalDate from, LocalDate to) {
+            return cheapestAvailableRooms(category, from, to, Integer.MAX_VALUE);
+        }
+
+        // Up to `limit` available rooms of the category, cheapest first. Only that category's rooms
+        // are visited, in price order, and the scan stops once `limit` rooms are found.
+        public List<Room> cheapestAvailableRooms(Category category, LocalDate from, LocalDate to, int limit) {
+            ensureCalendarWindow();
+            long fromDay = from.toEpochDay(), toDay = to.toEpochDay();
             List<Room> candidates = new ArrayList<>();
-            for (Room r : rooms) {
-                if (r.category != category) continue;
-                if (isRoomAvailable(r.id, from, to)) {
+            AvailabilitySnapshot snapshot = availability.get();
+            CategoryInventory counts = snapshot.inventory();
+            if (counts != null && counts.covers(fromDay, toDay) && counts.soldOut(category, fromDay, toDay)) {
+                return candidates;
+            }
+            for (Room r : roomCatalog.byPrice(category)) {
+                if (candidates.size() >= limit) break;
+                if (isFree(snapshot, r.id, fromDay, toDay)) {
                     candidates.add(r);
                 }
             }
             return candidates;
         }
 
-        // Check availability by ensuring no overlapping confirmed reservations
-        public boolean isRoomAvailable(int roomId, LocalDate from, LocalDate to) {
-            for (Reservation res : reservations) {
-                if (res.roomId != roomId) continue;
-                if (res.status != ReservationStatus.CONFIRMED) continue;
-                // overlap condition: (res.checkIn < to) && (from < res.checkOut)
-                if ((res.checkIn.isBefore(to)) && (from.isBefore(res.checkOut))) {
-                    return false;
+        // "Any of these categories (all if none given), arriving up to flexDays earlier or later":
+        // the cheapest free room for every category and date shift, searched in parallel, ranked
+        // by total price, then by how far the dates moved. Shifts that would start before today, or
+        // move a date past LocalDate.MAX, are skipped.
+        public List<StayOption> flexibleSearch(LocalDate checkIn, LocalDate checkOut, int flexDays, Category... categories) {
+            if (flexDays < 0) throw new IllegalArgumentException("flexDays must not be negative: " + flexDays);
+            Category[] wanted = categories.length == 0 ? Category.values() : categories;
+            int shifts = 2 * flexDays + 1;
+            long nights = checkOut.toEpochDay() - checkIn.toEpochDay();
+            long latestShift = LocalDate.MAX.toEpochDay() - checkOut.toEpochDay();
+            LocalDate today = LocalDate.now();
+            if (nights <= 0) return new ArrayList<>();
+            ensureCalendarWindow(); // once here rather than racing to slide it from every task
+            return java.util.stream.IntStream.range(0, wanted.length * shifts).parallel()
+                    .mapToObj(i -> {
+                        Category category = wanted[i / shifts];
+                        int shift = i % shifts - flexDays;
+                        if (shift > latestShift || checkIn.toEpochDay() + shift < today.toEpochDay()) return null;
+                        LocalDate in = checkIn.plusDays(shift), out = checkOut.plusDays(shift);
+                        List<Room> cheapest = cheapestAvailableRooms(category, in, out, 1);
+                        return cheapest.isEmpty() ? null : new StayOption(cheapest.get(0), in, out, shift, nights * cheapest.get(0).pricePerNight);
+                    })
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingDouble((StayOption o) -> o.totalPrice)
+                            .thenComparingInt(o -> Math.abs(o.shiftDays))
+                            .thenComparingInt(o -> o.shiftDays))
+                    .collect(java.util.stream.Collectors.toList());
+        }
+
+        // Room x night availability for [from, to) over the rooms of the given categories (all rooms
+        // if none are given), in room list order. Rows are copied from one availability snapshot a
+        // word at a time; ranges outside the calendar window are filled from the schedules.
+        // Throws IllegalArgumentException if the range has more nights than an int holds.
+        public AvailabilityGrid availabilityGrid(LocalDate from, LocalDate to, Category... categories) {
+            long fromDay = from.toEpochDay();
+            long span = to.toEpochDay() - fromDay;
+            if (span > Integer.MAX_VALUE) throw new IllegalArgumentException("Date range too long: " + span + " nights");
+            int nights = (int) Math.max(0, span);
+            ensureCalendarWindow();
+            Set<Category> wanted = categories.length == 0 ? EnumSet.allOf(Category.class) : EnumSet.copyOf(Arrays.asList(categories));
+            List<Room> selected = new ArrayList<>();
+            for (Room r : rooms) {
+                if (wanted.contains(r.category)) selected.add(r);
+            }
+            AvailabilityGrid grid = new AvailabilityGrid(fromDay, nights, selected);
+            AvailabilitySnapshot snapshot = availability.get();
+            for (int row = 0; row < selected.size(); row++) {
+                int roomId = selected.get(row).id;
+                OccupancyCalendar cal = snapshot.get(roomRegistry.indexOf(roomId));
+                if (nights > 0 && cal != null && cal.covers(fromDay, fromDay + nights)) {
+                    cal.copyFree(fromDay, nights, grid.bits, row * grid.wordsPerRoom);
+                    continue;
+                }
+                ReentrantLock lock = lockFor(roomId);
+                lock.lock();
+                try {
+                    grid.fillFromSchedule(row, roomSchedules.get(roomId));
+                } finally {
+                    lock.unlock();
                 }
             }
-            return true;
+            return grid;
+        }
+
+        // Rooms of the category still free on each night of [from, to), read from the inventory
+        // counters without visiting any room (or from an availability grid outside their window).
+        // Throws IllegalArgumentException if the range has more nights than an int holds.
+        public int[] availableRoomsPerNight(Category category, LocalDate from, LocalDate to) {
+            ensureCalendarWindow();
+            long fromDay = from.toEpochDay(), toDay = to.toEpochDay();
+            CategoryInventory counts = availability.get().inventory();
+            if (counts != null && counts.covers(fromDay, toDay)) return counts.available(category, fromDay, toDay);
+            AvailabilityGrid grid = availabilityGrid(from, to, category);
+            int[] free = new int[grid.nights];
+            for (int night = 0; night < free.length; night++) free[night] = grid.freeRooms(night);
+            return free;
+        }
+
+        // The room with this id, or null
+        public Room getRoom(int roomId) {
+            return roomRegistry.get(roomId);
+        }
+
+        // Check availability by ensuring no overlapping confirmed or pending reservations
+        public boolean isRoomAvailable(int roomId, LocalDate from, LocalDate to) {
+            if (roomRegistry.get(roomId) == null) return false;
+            ensureCalendarWindow();
+            return isFree(availability.get(), roomId, from.toEpochDay(), to.toEpochDay());
+        }
+
+        // Lock-free when the snapshot's calendar covers the range; otherwise asks the schedule
+        private boolean isFree(AvailabilitySnapshot snapshot, int roomId, long fromDay, long toDay) {
+            OccupancyCalendar cal = snapshot.get(roomRegistry.indexOf(roomId));
+            if (fromDay < toDay && cal != null && cal.covers(fromDay, toDay)) return cal.isFree(fromDay, toDay);
+            return isFreeLocked(roomId, fromDay, toDay);
+        }
+
+        private boolean isFreeLocked(int roomId, long fromDay, long toDay) {
+            ReentrantLock lock = lockFor(roomId);
+            lock.lock();
+            try {
+                return isFree(roomId, fromDay, toDay);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Callers hold the room's lock
+        private boolean isFree(int roomId, long fromDay, long toDay) {
+            OccupancyCalendar cal = calendars.get(roomId);
+            if (fromDay < toDay && cal != null && cal.covers(fromDay, toDay)) {
+                return cal.isFree(fromDay, toDay);
+            }
+            TreeMap<Long, Reservation> schedule = roomSchedules.get(roomId);
+            if (schedule == null) return true;
+            // overlap condition: (res.checkIn < to) && (from < res.checkOut)
+            // only the last stay checking in before `to` can still be running at `from`
+            Map.Entry<Long, Reservation> last = schedule.lowerEntry(toDay);
+            return last == null || last.getValue().checkOut.toEpochDay() <= fromDay;
         }
 
-        // Make a reservation: returns Reservation if success else null
+        // Make a reservation: returns Reservation if success else null. Throws CompletionException
+        // if the booking could not be saved.
         public Reservation makeReservation(int roomId, String guestName, LocalDate checkIn, LocalDate checkOut) {
-            // basic validations
-            if (!checkIn.isBefore(checkOut) && !checkIn.equals(checkOut)) {
-                System.out.println("Invalid dates: check-in must be before check-out.");
-                return null;
+            return makeReservationAsync(roomId, guestName, checkIn, checkOut).join();
+        }
+
+        // Hold the room as PENDING and charge for it without blocking the caller. The future
+        // completes with the reservation once the payment outcome is recorded, with null if
+        // the booking was rejected up front, or exceptionally if it could not be saved.
+        public CompletableFuture<Reservation> makeReservationAsync(int roomId, String guestName,
+                                                                   LocalDate checkIn, LocalDate checkOut) {
+            return makeReservationsAsync(Collections.singletonList(new BookingRequest(roomId, guestName, checkIn, checkOut)))
+                    .thenApply(group -> group == null ? null : group.get(0));
+        }
+
+        // Book a group of rooms all-or-nothing: returns the reservations, or null if any of them
+        // cannot be booked. The whole group is charged as one payment.
+        public List<Reservation> makeReservations(List<BookingRequest> requests) {
+            return makeReservationsAsync(requests).join();
+        }
+
+        public CompletableFuture<List<Reservation>> makeReservationsAsync(List<BookingRequest> requests) {
+            List<Reservation> group;
+            try {
+                group = holdRooms(requests);
+            } catch (IOException e) {
+                System.err.println("Failed to save reservations: " + e.getMessage());
+                return CompletableFuture.failedFuture(e);
             }
-            if (!isRoomAvailable(roomId, checkIn, checkOut)) {
-                System.out.println("Selected room is not available for given dates.");
-                return null;
+            if (group == null) return CompletableFuture.completedFuture(null);
+            double total = 0;
+            for (Reservation r : group) total += r.amount;
+            return paymentGateway.charge(total)
+                    .exceptionally(e -> false)
+                    .thenApply(paymentOK -> completePayment(group, paymentOK))
+                    .thenCompose(done -> durable().thenApply(v -> done));
+        }
+
+        // Check and hold every requested stay as PENDING, or none of them
+        private List<Reservation> holdRooms(List<BookingRequest> requests) throws IOException {
+            if (requests.isEmpty()) return null;
+            double[] amounts = new double[requests.size()];
+            for (int i = 0; i < requests.size(); i++) {
+                BookingRequest req = requests.get(i);
+                // basic validations
+                if (!req.checkIn.isBefore(req.checkOut)) {
+                    System.out.println("Invalid dates: check-in must be before check-out.");
+                    return null;
+                }
+                Room room = roomRegistry.get(req.roomId);
+                if (room == null) {
+                    System.out.println("Room not found.");
+                    return null;
+                }
+                long nights = req.checkOut.toEpochDay() - req.checkIn.toEpochDay();
+                amounts[i] = nights * room.pricePerNight;
             }
-            Optional<Room> optRoom = rooms.stream().filter(r -> r.id == roomId).findFirst();
-            if (!optRoom.isPresent()) {
-                System.out.println("Room not found.");
-                return null;
+
+            ensureCalendarWindow();
+            // the availability checks and the holds happen under the rooms' locks, taken in room
+            // id order so concurrent groups cannot deadlock
+            List<ReentrantLock> locks = lockRooms(requests.stream().map(req -> req.roomId));
+            try {
+                List<Reservation> group = new ArrayList<>(requests.size());
+                for (int i = 0; i < requests.size(); i++) {
+                    BookingRequest req = requests.get(i);
+                    // stays already held for this group count too, so a group cannot overlap itself
+                    if (!isFree(req.roomId, req.checkIn.toEpochDay(), req.checkOut.toEpochDay())) {
+                        System.out.println(requests.size() == 1 ? "Selected room is not available for given dates."
+                                : "Room " + req.roomId + " is not available for given dates.");
+                        group.forEach(this::unscheduleStay);
+                        return null;
+                    }
+                    // the id is issued when the group is recorded
+                    Reservation res = new Reservation(null, req.roomId, req.guestName,
+                            req.checkIn, req.checkOut, amounts[i], ReservationStatus.PENDING);
+                    scheduleStay(res);
+                    group.add(res);
+                }
+                try {
+                    recordReservations(group);
+                } catch (IOException e) {
+                    group.forEach(this::unscheduleStay);
+                    throw e;
+                }
+                publish(new TreeSet<>(roomIds(group)));
+                return group;
+            } finally {
+                unlockAll(locks);
             }
-            Room room = optRoom.get();
-            long nights = checkOut.toEpochDay() - checkIn.toEpochDay();
-            if (nights <= 0) nights = 1; // fallback
-            double amount = nights * room.pricePerNight;
-
-            // Simulate payment
-            boolean paymentOK = PaymentSimulator.processPayment(amount);
-            String resId = generateReservationId();
-            Reservation res;
-            if (paymentOK) {
-                res = new Reservation(resId, roomId, guestName, checkIn, checkOut, amount, ReservationStatus.CONFIRMED);
-                reservations.add(res);
-                saveReservations();
-                System.out.println("Payment succeeded. Reservation confirmed: " + resId);
-            } else {
-                res = new Reservation(resId, roomId, guestName, checkIn, checkOut, amount, ReservationStatus.FAILED_PAYMENT);
-                reservations.add(res);
-                saveReservations();
-                System.out.println("Payment failed. Reservation recorded as FAILED_PAYMENT with id: " + resId);
+        }
+
+        // Record the payment outcome. If the store refuses it after a failed sync, the records stay
+        // PENDING on disk, which the next start reads back as FAILED_PAYMENT, so the rooms are
+        // released now to match; the commit that follows then fails and the booking is reported
+        // as failed.
+        private List<Reservation> completePayment(List<Reservation> group, boolean paymentOK) {
+            List<ReentrantLock> locks = lockRooms(group.stream().map(r -> r.roomId));
+            try {
+                for (Reservation res : group) res.status = paymentOK ? ReservationStatus.CONFIRMED : ReservationStatus.FAILED_PAYMENT;
+                boolean saved = true;
+                try {
+                    storeStatusChanged(group);
+                } catch (IOException e) {
+                    saved = false;
+                    for (Reservation res : group) res.status = ReservationStatus.FAILED_PAYMENT;
+                }
+                for (Reservation res : group) {
+                    if (res.status == ReservationStatus.CONFIRMED) {
+                        System.out.println("Payment succeeded. Reservation confirmed: " + res.reservationId);
+                    } else {
+                        unscheduleStay(res);
+                        System.out.println((saved ? "Payment failed." : "Payment outcome could not be saved.")
+                                + " Reservation recorded as FAILED_PAYMENT with id: " + res.reservationId);
+                    }
+                }
+                if (!paymentOK || !saved) publish(new TreeSet<>(roomIds(group)));
+                return group;
+            } finally {
+                unlockAll(locks);
             }
-            return res;
         }
 
-        // Cancel reservation by reservationId
+        private static List<Integer> roomIds(List<Reservation> group) {
+            List<Integer> ids = new ArrayList<>(group.size());
+            for (Reservation r : group) ids.add(r.roomId);
+            return ids;
+        }
+
+        private List<ReentrantLock> lockRooms(java.util.stream.Stream<Integer> roomIds) {
+            List<ReentrantLock> locks = new ArrayList<>();
+            roomIds.distinct().sorted().forEach(id -> {
+                ReentrantLock lock = lockFor(id);
+                lock.lock();
+                locks.add(lock);
+            });
+            return locks;
+        }
+
+        private static void unlockAll(List<ReentrantLock> locks) {
+            for (int i = locks.size() - 1; i >= 0; i--) locks.get(i).unlock();
+        }
+
+        // Cancel reservation by reservationId. Throws CompletionException if the cancellation
+        // could not be saved.
         public boolean cancelReservation(String reservationId) {
-            for (Reservation r : reservations) {
-                if (r.reservationId.equals(reservationId)) {
-                    if (r.status == ReservationStatus.CANCELLED) {
-                        System.out.println("Reservation already cancelled.");
-                        return false;
-                    }
-                    r.status = ReservationStatus.CANCELLED;
-                    saveReservations();
-                    System.out.println("Reservation " + reservationId + " cancelled.");
-                    return true;
+            Reservation r = findStored(reservationId);
+            if (r == null && archive != null && !archive.findById(reservationId).isEmpty()) {
+                System.out.println("Reservation is archived and can no longer be changed.");
+                return false;
+            }
+            if (r == null) {
+                System.out.println("Reservation id not found.");
+                return false;
+            }
+            ReentrantLock lock = lockFor(r.roomId);
+            lock.lock();
+            try {
+                if (r.status == ReservationStatus.CANCELLED) {
+                    System.out.println("Reservation already cancelled.");
+                    return false;
+                }
+                if (r.status == ReservationStatus.PENDING) {
+                    System.out.println("Reservation is still awaiting payment.");
+                    return false;
+                }
+                // saved first, so a store that refuses the change leaves the booking as it was
+                ReservationStatus previous = r.status;
+                r.status = ReservationStatus.CANCELLED;
+                try {
+                    storeStatusChanged(r);
+                } catch (IOException e) {
+                    r.status = previous;
+                    System.err.println("Failed to save reservations: " + e.getMessage());
+                    throw new CompletionException(e);
                 }
+                if (previous == ReservationStatus.CONFIRMED) {
+                    unscheduleStay(r);
+                    publish(Collections.singletonList(r.roomId));
+                }
+            } finally {
+                lock.unlock();
             }
-            System.out.println("Reservation id not found.");
-            return false;
+            durable().join();
+            System.out.println("Reservation " + reservationId + " cancelled.");
+            return true;
         }
 
+        // Archived reservations first (they are the oldest), then the ones in the store
         public List<Reservation> getReservationsForGuest(String guestName) {
             List<Reservation> res = new ArrayList<>();
-            for (Reservation r : reservations) {
-                if (r.guestName.equalsIgnoreCase(guestName)) res.add(r);
+            if (archive != null) res.addAll(archive.findByGuest(guestName));
+            if (lazyHistory && store != null) {
+                // history is not in memory: follow the guest's records through the store's guest index
+                for (int slot : store.findByGuest(guestName)) res.add(resident(slot));
+                return res;
             }
+            List<Reservation> indexed = reservationsByGuest.get(foldGuestName(guestName));
+            if (indexed != null) res.addAll(indexed);
             return res;
         }
 
+        // Guest names starting with `prefix` (ignoring case), in name order, for type-ahead search
+        public List<String> findGuestNames(String prefix, int limit) {
+            String from = foldGuestName(prefix);
+            List<String> names = new ArrayList<>();
+            for (String name : guestNames.subMap(from, true, from + Character.MAX_VALUE, false).values()) {
+                if (names.size() == limit) break;
+                names.add(name);
+            }
+            return names;
+        }
+
         public Reservation getReservationById(String id) {
-            for (Reservation r : reservations) if (r.reservationId.equals(id)) return r;
-            return null;
+            Reservation r = findStored(id);
+            if (r != null || archive == null) return r;
+            List<Reservation> archived = archive.findById(id);
+            return archived.isEmpty() ? null : archived.get(0);
         }
 
-        private String generateReservationId() {
-            return "R" + (1000 + random.nextInt(9000));
+        private Reservation findStored(String id) {
+            Reservation r = reservationsById.get(id);
+            if (r != null || !lazyHistory || store == null) return r;
+            int slot = store.findById(id);
+            if (slot < 0) return null;
+            r = resident(slot);
+            Reservation first = reservationsById.putIfAbsent(id, r);
+            return first != null ? first : r;
         }
     }
 
-    // ---------- Payment simulator ----------
-    static class PaymentSimulator {
-        // Simulate payment: 85% chance succeed
-        public static boolean processPayment(double amount) {
-            System.out.printf("Processing payment of %.2f ...\n", amount);
-            try {
-                Thread.sleep(400); // small delay to simulate processing (safe short)
-            } catch (InterruptedException ignored) {}
-            boolean ok = Math.random() < 0.85;
-            System.out.println(ok ? "Payment approved." : "Payment declined.");
-            return ok;
+    // ---------- Hotel group (one shard per property) ----------
+    // Routes requests for several hotels to one ReservationManager per hotel. Each shard has its
+    // own rooms, reservations, indexes, locks and data directory (baseDir/hotelId), so shards never
+    // contend with each other. Queries over many hotels (a city, or a guest everywhere) run on the
+    // fork-join pool, one task per shard, and their results are merged. Reservation ids are only
+    // unique within a hotel, so changes to a reservation name its hotel.
+    static class HotelGroup implements Closeable {
+        private final String baseDir;
+        private final PaymentGateway paymentGateway;
+        private final ForkJoinPool pool = ForkJoinPool.commonPool();
+        private final Map<String, ReservationManager> shards = new ConcurrentSkipListMap<>();
+        private final Map<String, List<String>> hotelsByCity = new ConcurrentHashMap<>();
+        private boolean lazyHistory;
+        private boolean archiveOnLoad;
+
+        public HotelGroup(String baseDir, PaymentGateway paymentGateway) {
+            this.baseDir = baseDir;
+            this.paymentGateway = paymentGateway;
         }
-    }
 
-    // ---------- Console UI ----------
-    static class ConsoleUI {
-        private final ReservationManager manager;
-        private final Scanner sc = new Scanner(System.in);
-        private final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        // Passed on to every shard (call before open)
+        public void setLazyHistory(boolean lazy) {
+            this.lazyHistory = lazy;
+        }
 
-        public ConsoleUI(ReservationManager manager) {
-            this.manager = manager;
+        public void setArchiveOnLoad(boolean archiveOnLoad) {
+            this.archiveOnLoad = archiveOnLoad;
         }
 
-        public void run() {
-            printHeader();
-            while (true) {
-                printMenu();
-                String choice = sc.nextLine().trim();
-                switch (choice) {
-                    case "1": handleSearchAndBook(); break;
-                    case "2": handleCancel(); break;
-                    case "3": handleViewBookingsByGuest(); break;
-                    case "4": handleViewReservationDetails(); break;
-                    case "5": showAllRooms(); break;
-                    case "0": exitApp(); return;
-                    default: System.out.println("Unknown option. Try again."); break;
+        // Open the hotels (hotel id -> city), loading their shards in parallel. Hotel ids name
+        // directories, so only letters, digits, '-' and '_' are accepted. Returns false if any
+        // hotel could not be opened; the other shards are still opened.
+        public boolean open(Map<String, String> cityByHotel) {
+            boolean ok = true;
+            Map<String, ReservationManager> opened = new LinkedHashMap<>();
+            for (Map.Entry<String, String> e : cityByHotel.entrySet()) {
+                if (!e.getKey().matches("[A-Za-z0-9_-]+")) {
+                    System.err.println("Invalid hotel id: " + e.getKey());
+                    ok = false;
+                    continue;
+                }
+                File dir = new File(baseDir, e.getKey());
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    System.err.println("Cannot create data directory " + dir);
+                    ok = false;
+                    continue;
+                }
+                ReservationManager m = new ReservationManager(dir.getPath(), paymentGateway);
+                m.setLazyHistory(lazyHistory);
+                m.setArchiveOnLoad(archiveOnLoad);
+                opened.put(e.getKey(), m);
+            }
+            List<ForkJoinTask<Boolean>> loads = new ArrayList<>();
+            for (ReservationManager m : opened.values()) loads.add(pool.submit(m::loadState));
+            int i = 0;
+            for (Map.Entry<String, ReservationManager> e : opened.entrySet()) {
+                if (!loads.get(i++).join()) {
+                    System.err.println("Hotel " + e.getKey() + " could not be loaded.");
+                    ok = false;
+                    continue;
                 }
+                shards.put(e.getKey(), e.getValue());
+                hotelsByCity.computeIfAbsent(cityByHotel.get(e.getKey()), k -> new CopyOnWriteArrayList<>()).add(e.getKey());
             }
+            return ok;
         }
 
-        private void printHeader() {
-            System.out.println("=== Hotel Reservation System ===");
+        public Set<String> hotels() {
+            return Collections.unmodifiableSet(shards.keySet());
         }
 
-        private void printMenu() {
-            System.out.println("\nMenu:");
-            System.out.println("1) Search rooms & Book");
-            System.out.println("2) Cancel reservation");
-            System.out.println("3) View my bookings (by guest name)");
-            System.out.println("4) View booking details (by reservation id)");
-            System.out.println("5) List all rooms");
-            System.out.println("0) Exit");
-            System.out.print("Choose: ");
+        public ReservationManager hotel(String hotelId) {
+            ReservationManager m = shards.get(hotelId);
+            if (m == null) throw new IllegalArgumentException("Unknown hotel: " + hotelId);
+            return m;
         }
 
-        private void handleSearchAndBook() {
-            try {
-                System.out.print("Enter category (Standard/Deluxe/Suite): ");
-                Category cat = Category.fromString(sc.nextLine());
-                System.out.print("Check-in date (YYYY-MM-DD): ");
-                LocalDate in = LocalDate.parse(sc.nextLine().trim(), dtf);
-                System.out.print("Check-out date (YYYY-MM-DD): ");
-                LocalDate out = LocalDate.parse(sc.nextLine().trim(), dtf);
+        // Available rooms of the category in every hotel of the city, cheapest first
+        public List<HotelRoom> searchCity(String city, Category category, LocalDate from, LocalDate to) {
+            List<HotelRoom> merged = new ArrayList<>();
+            fanOut(hotelsByCity.getOrDefault(city, Collections.emptyList()),
+                    m -> m.searchAvailableRooms(category, from, to))
+                    .forEach((hotelId, rooms) -> rooms.forEach(r -> merged.add(new HotelRoom(hotelId, r))));
+            merged.sort(Comparator.comparingDouble(h -> h.room.pricePerNight));
+            return merged;
+        }
 
-                List<Room> avail = manager.searchAvailableRooms(cat, in, out);
-                if (avail.isEmpty()) {
-                    System.out.println("No available rooms found for those dates.");
-                    return;
-                }
-                System.out.println("Available rooms:");
-                for (Room r : avail) System.out.println(" - " + r);
+        public Reservation makeReservation(String hotelId, int roomId, String guestName, LocalDate checkIn, LocalDate checkOut) {
+            return hotel(hotelId).makeReservation(roomId, guestName, checkIn, checkOut);
+        }
+
+        public CompletableFuture<Reservation> makeReservationAsync(String hotelId, int roomId, String guestName,
+                                                                   LocalDate checkIn, LocalDate checkOut) {
+            return hotel(hotelId).makeReservationAsync(roomId, guestName, checkIn, checkOut);
+        }
+
+        public boolean cancelReservation(String hotelId, String reservationId) {
+            return hotel(hotelId).cancelReservation(reservationId);
+        }
+
+        // A guest's reservations in every hotel that has any, by hotel id
+        public Map<String, List<Reservation>> getReservationsForGuest(String guestName) {
+            Map<String, List<Reservation>> found = fanOut(shards.keySet(), m -> m.getReservationsForGuest(guestName));
+            found.values().removeIf(List::isEmpty);
+            return found;
+        }
+
+        // Run `query` on each hotel's shard in parallel; results in the order of `hotelIds`
+        private <T> Map<String, T> fanOut(Collection<String> hotelIds, java.util.function.Function<ReservationManager, T> query) {
+            Map<String, ForkJoinTask<T>> tasks = new LinkedHashMap<>();
+            for (String hotelId : hotelIds) {
+                ReservationManager m = hotel(hotelId);
+                tasks.put(hotelId, pool.submit(() -> query.apply(m)));
+            }
+            Map<String, T> results = new LinkedHashMap<>();
+            tasks.forEach((hotelId, task) -> results.put(hotelId, task.join()));
+            return results;
+        }
+
+        @Override
+        public void close() {
+            for (ReservationManager m : shards.values()) m.close();
+        }
+    }
+
+    // One answer of a flexible search: a room for a stay moved by shiftDays from the requested dates
+    static class StayOption {
+        final Room room;
+        final LocalDate checkIn;
+        final LocalDate checkOut;
+        final int shiftDays;
+        final double totalPrice;
+
+        StayOption(Room room, LocalDate checkIn, LocalDate checkOut, int shiftDays, double totalPrice) {
+            this.room = room;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+            this.shiftDays = shiftDays;
+            this.totalPrice = totalPrice;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s | %s -> %s (%+d days) | total %.2f", room, checkIn, checkOut, shiftDays, totalPrice);
+        }
+    }
+
+    // A room together with the hotel it belongs to
+    static class HotelRoom {
+        final String hotelId;
+        final Room room;
+
+        HotelRoom(String hotelId, Room room) {
+            this.hotelId = hotelId;
+            this.room = room;
+        }
+
+        @Override
+        public String toString() {
+            return hotelId + " " + room;
+        }
+    }
+
+    // ---------- Binary record codec ----------
+    // Layout of rooms.dat, and helpers shared by the other data files. Each file starts with a
+    // magic number and a format version; money is stored as whole cents and dates as epoch days.
+    //   rooms.dat: header, count, then per room: id int, category byte, price long; then a
+    //              CRC32 of everything before it
+    // reservations.dat is a ReservationStore; RESERVATIONS_MAGIC starts its header.
+    static class RecordCodec {
+        static final int ROOMS_MAGIC = 0x48524D53;        // "HRMS"
+        static final int RESERVATIONS_MAGIC = 0x48525356; // "HRSV"
+        static final short ROOMS_VERSION = 2;
+        static final int ID_BYTES = 16;
+
+        interface SnapshotWriter {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        public static DataInputStream openInput(String file) throws IOException {
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        // True if the file was written by ObjectOutputStream (the format before this codec)
+        public static boolean isSerializedFile(String file) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                return in.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        // Replace rooms.dat as a whole; see writeAtomically
+        public static void saveRooms(String file, List<Room> rooms) throws IOException {
+            writeAtomically(file, out -> writeRooms(out, rooms));
+        }
+
+        // Read rooms.dat, rejecting it if its checksum does not match
+        public static List<Room> loadRooms(String file) throws IOException {
+            byte[] data = Files.readAllBytes(Paths.get(file));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            List<Room> rooms = readRooms(in);
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, Math.max(0, data.length - 4));
+            if (in.available() != 4 || in.readInt() != (int) crc.getValue()) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+            return rooms;
+        }
+
+        // Write `file` through a temporary sibling: the content and a CRC32 of it, fsync, then an
+        // atomic rename over the old file. A crash leaves either the old file or the new one,
+        // never a truncated mix.
+        public static void writeAtomically(String file, SnapshotWriter body) throws IOException {
+            Path target = Paths.get(file).toAbsolutePath();
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                body.write(out);
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(target);
+        }
+
+        // Make a rename of `file` durable by syncing the directory holding it
+        static void syncDirectory(Path file) {
+            try (FileChannel dir = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+                // not every platform can open a directory (Windows cannot); the rename is still atomic
+            }
+        }
+
+        public static void writeRooms(DataOutputStream out, List<Room> rooms) throws IOException {
+            out.writeInt(ROOMS_MAGIC);
+            out.writeShort(ROOMS_VERSION);
+            out.writeInt(rooms.size());
+            for (Room r : rooms) {
+                out.writeInt(r.id);
+                out.writeByte(r.category.ordinal());
+                out.writeLong(toCents(r.pricePerNight));
+            }
+        }
+
+        public static List<Room> readRooms(DataInputStream in) throws IOException {
+            readHeader(in, ROOMS_MAGIC, ROOMS_VERSION);
+            int count = in.readInt();
+            List<Room> rooms = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rooms.add(new Room(in.readInt(), Category.values()[in.readByte()], fromCents(in.readLong())));
+            }
+            return rooms;
+        }
+
+        private static void readHeader(DataInputStream in, int magic, short expected) throws IOException {
+            if (in.readInt() != magic) throw new IOException("Not a hotel data file");
+            short version = in.readShort();
+            if (version != expected) throw new IOException("Unsupported data file version " + version);
+        }
+
+        static long toCents(double amount) {
+            return Math.round(amount * 100);
+        }
+
+        static double fromCents(long cents) {
+            return cents / 100.0;
+        }
+    }
+
+    // ---------- Reservation store ----------
+    // Memory-mapped file of fixed-size reservation records, so a booking appends one record and a
+    // status change rewrites the status byte and checksum in place. Guest names are interned in a
+    // side file of UTF strings and referenced by index. Writes are serialized by the store's monitor.
+    //   header (64 bytes): magic int, version short, record count int (at COUNT_OFFSET),
+    //                      last issued reservation id long (at LAST_ID_OFFSET),
+    //                      archive generation long (at ARCHIVE_GEN_OFFSET, 0 if never archived),
+    //                      synced record count int (at SYNCED_OFFSET)
+    //   record (48 bytes): id (16 ASCII bytes), room int, guest-name index int, check-in int,
+    //                      check-out int, amount cents long, status byte, padding, and a CRC32
+    //                      of the bytes up to the status (at CRC_OFFSET)
+    // Records straddle 4 KB page boundaries, and dirty pages are written back in any order, so a
+    // crash can tear any record written since the last sync. Each sync stores how many records it
+    // covered; only damage at or above that synced count is taken for a torn, unsaved tail.
+    // A failed sync leaves unknown what reached the disk, so from then on the store refuses every
+    // change (and every later sync): nothing reported as failed can be saved by a later sync.
+    // One mapping cannot exceed 2 GB, so records are mapped in segments of SEGMENT_RECORDS; only
+    // the last segment grows, doubling until it is full, after which a new segment is added.
+    // Ids issued by ReservationIdGenerator are appended in increasing order, so findById is a
+    // binary search. An optional guest index (openGuestIndex) chains each record to the previous
+    // record with the same guest name:
+    //   guests.idx: magic int, version short, padding short, then per record the slot of the
+    //               guest's previous record int (-1 for the guest's first)
+    // It only mirrors the records, so it is checked against them on opening rather than synced.
+    static class ReservationStore implements Closeable {
+        static final short VERSION = 4;
+        static final int HEADER_BYTES = 64;
+        static final int RECORD_BYTES = 48;
+        private static final int COUNT_OFFSET = 8;
+        private static final int LAST_ID_OFFSET = 16;
+        private static final int ARCHIVE_GEN_OFFSET = 24;
+        private static final int SYNCED_OFFSET = 32;
+        private static final int STATUS_OFFSET = 40;
+        private static final int CRC_OFFSET = 44;
+        private static final int INITIAL_CAPACITY = 1024; // records
+        private static final int SEGMENT_BITS = 24;
+        static final int SEGMENT_RECORDS = 1 << SEGMENT_BITS; // 768 MB per mapping
+        static final int GUEST_INDEX_MAGIC = 0x48524749; // "HRGI"
+        static final short GUEST_INDEX_VERSION = 1;
+        private static final int GUEST_INDEX_HEADER_BYTES = 8;
+        private static final int GUEST_INDEX_CHUNK = 1 << 16; // entries checked per read on opening
+
+        private final FileChannel channel;
+        private MappedByteBuffer header;
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0]; // replaced as the store grows
+        private int count;
+        private volatile IOException failure; // the first failed sync
+
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> nameIndex = new HashMap<>();
+        private final Map<String, List<Integer>> refsByFoldedName = new HashMap<>(); // every spelling of a name
+        private final DataOutputStream namesOut;
+
+        private FileChannel guestIndex; // null unless opened
+        private int[] lastSlotByRef; // newest record per guest-name index, -1 if none
+
+        private final FileDescriptor namesFd;
+
+        private ReservationStore(FileChannel channel, String namesFile) throws IOException {
+            this.channel = channel;
+            if (new File(namesFile).exists()) {
+                try (DataInputStream in = RecordCodec.openInput(namesFile)) {
+                    while (true) internName(in.readUTF());
+                } catch (EOFException end) {
+                    // all names read
+                }
+            }
+            FileOutputStream names = new FileOutputStream(namesFile, true);
+            this.namesFd = names.getFD();
+            this.namesOut = new DataOutputStream(new BufferedOutputStream(names));
+        }
+
+        public static ReservationStore open(String file, String namesFile) throws IOException {
+            FileChannel channel = FileChannel.open(Paths.get(file),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ReservationStore store = new ReservationStore(channel, namesFile);
+                boolean fresh = channel.size() == 0;
+                store.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                store.mapRecords(Math.max(INITIAL_CAPACITY, (channel.size() - HEADER_BYTES) / RECORD_BYTES));
+                if (fresh) {
+                    store.header.putInt(0, RecordCodec.RESERVATIONS_MAGIC);
+                    store.header.putShort(4, VERSION);
+                    store.header.putInt(COUNT_OFFSET, 0);
+                } else if (store.header.getInt(0) != RecordCodec.RESERVATIONS_MAGIC) {
+                    throw new IOException("Not a reservation store: " + file);
+                } else if (store.header.getShort(4) != VERSION) {
+                    throw new IOException("Unsupported reservation store version " + store.header.getShort(4) + ": " + file);
+                }
+                store.count = store.header.getInt(COUNT_OFFSET);
+                if (store.count < 0 || HEADER_BYTES + (long) store.count * RECORD_BYTES > channel.size()) {
+                    throw new IOException("Record count out of range in " + file);
+                }
+                store.verify(file, store.header.getInt(SYNCED_OFFSET));
+                return store;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // True if the file starts with the store's magic number (as opposed to the serialized list
+        // written before the store existed); open() checks the version
+        public static boolean isStoreFile(String file) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                return in.readInt() == RecordCodec.RESERVATIONS_MAGIC;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        // Map segments until `capacity` records fit (the file grows to match). Segments already
+        // mapped at their full size are kept; readers holding the old array still see the same file.
+        private void mapRecords(long capacity) throws IOException {
+            MappedByteBuffer[] current = segments;
+            int needed = (int) ((capacity + SEGMENT_RECORDS - 1) >>> SEGMENT_BITS);
+            MappedByteBuffer[] next = Arrays.copyOf(current, Math.max(needed, current.length));
+            for (int s = 0; s < needed; s++) {
+                long bytes = Math.min(SEGMENT_RECORDS, capacity - ((long) s << SEGMENT_BITS)) * RECORD_BYTES;
+                if (next[s] != null && next[s].capacity() >= bytes) continue;
+                next[s] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + ((long) s << SEGMENT_BITS) * RECORD_BYTES, bytes);
+            }
+            segments = next;
+        }
+
+        private long capacity() {
+            MappedByteBuffer[] segs = segments;
+            return ((long) (segs.length - 1) << SEGMENT_BITS) + segs[segs.length - 1].capacity() / RECORD_BYTES;
+        }
+
+        // The mapping holding `slot`, and the record's byte offset within it
+        private MappedByteBuffer segment(int slot) {
+            return segments[slot >>> SEGMENT_BITS];
+        }
+
+        private static int offset(int slot) {
+            return (slot & (SEGMENT_RECORDS - 1)) * RECORD_BYTES;
+        }
+
+        // Records at or above the synced count were appended after the last sync and none of them
+        // was reported as saved, so from the first damaged one on they are dropped. Damage below
+        // the synced count means the file itself is corrupt; it is refused and left as is.
+        private void verify(String file, int synced) throws IOException {
+            if (synced < 0 || synced > count) throw new IOException("Synced record count out of range in " + file);
+            int firstBad = -1;
+            for (int slot = 0; slot < count && firstBad < 0; slot++) {
+                if (!intact(slot)) firstBad = slot;
+            }
+            if (firstBad < 0) return;
+            if (firstBad < synced) throw new IOException("Damaged reservation record " + firstBad + " in " + file);
+            System.err.println("Dropped " + (count - firstBad) + " unsaved reservation records torn by a crash from " + file);
+            count = firstBad;
+            header.putInt(COUNT_OFFSET, count);
+            force();
+        }
+
+        private boolean intact(int slot) {
+            MappedByteBuffer buf = segment(slot);
+            int pos = offset(slot);
+            return buf.getInt(pos + CRC_OFFSET) == checksum(buf, pos)
+                    && buf.getInt(pos + 20) >= 0 && buf.getInt(pos + 20) < names.size()
+                    && buf.get(pos + STATUS_OFFSET) >= 0 && buf.get(pos + STATUS_OFFSET) < ReservationStatus.values().length;
+        }
+
+        private static int checksum(MappedByteBuffer buf, int pos) {
+            CRC32 crc = new CRC32();
+            crc.update(buf.slice(pos, STATUS_OFFSET + 1));
+            return (int) crc.getValue();
+        }
+
+        private void sealRecord(int slot) {
+            MappedByteBuffer buf = segment(slot);
+            int pos = offset(slot);
+            buf.putInt(pos + CRC_OFFSET, checksum(buf, pos));
+        }
+
+        public synchronized int size() {
+            return count;
+        }
+
+        public List<Reservation> readAll() {
+            List<Reservation> all = new ArrayList<>(count);
+            for (int slot = 0; slot < count; slot++) all.add(read(slot));
+            return all;
+        }
+
+        // Pending records, and records holding a room for a stay that ends after `today`
+        public List<Reservation> readActive(long today) {
+            int n = size();
+            MappedByteBuffer[] segs = segments;
+            List<Reservation> active = new ArrayList<>();
+            for (int slot = 0; slot < n; slot++) {
+                MappedByteBuffer buf = segs[slot >>> SEGMENT_BITS];
+                int pos = offset(slot);
+                ReservationStatus status = ReservationStatus.values()[buf.get(pos + STATUS_OFFSET)];
+                if (status == ReservationStatus.PENDING || status.holdsRoom() && buf.getInt(pos + 28) > today) {
+                    active.add(read(slot));
+                }
+            }
+            return active;
+        }
+
+        // Slot of the first record with this id, or -1. Generated ids are binary searched: they
+        // are in increasing order, after any records from before the generator (which compare as
+        // lowest). Only ids in the older format need a full scan.
+        public int findById(String id) {
+            long want = ReservationIdGenerator.value(id);
+            if (want == Long.MIN_VALUE) return scanForId(id);
+            int lo = 0, hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ReservationIdGenerator.value(readId(mid)) < want) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo < size() && readId(lo).equals(id) ? lo : -1;
+        }
+
+        private int scanForId(String id) {
+            if (id.length() > RecordCodec.ID_BYTES) return -1;
+            byte[] bytes = Arrays.copyOf(id.getBytes(StandardCharsets.US_ASCII), RecordCodec.ID_BYTES);
+            java.nio.ByteBuffer want = java.nio.ByteBuffer.wrap(bytes);
+            long hi = want.getLong(0), lo = want.getLong(8);
+            int n = size();
+            MappedByteBuffer[] segs = segments;
+            for (int slot = 0; slot < n; slot++) {
+                MappedByteBuffer buf = segs[slot >>> SEGMENT_BITS];
+                int pos = offset(slot);
+                if (buf.getLong(pos) == hi && buf.getLong(pos + 8) == lo) return slot;
+            }
+            return -1;
+        }
+
+        // Slots of the guest's records (the name compared ignoring case), in store order. With the
+        // guest index open this follows the guest's chains; otherwise it scans every record.
+        public List<Integer> findByGuest(String guestName) {
+            List<Integer> slots = new ArrayList<>();
+            int[] heads;
+            boolean[] wanted = null;
+            int n;
+            MappedByteBuffer[] segs;
+            synchronized (this) {
+                List<Integer> refs = refsByFoldedName.get(ReservationManager.foldGuestName(guestName));
+                if (refs == null) return slots;
+                heads = new int[refs.size()];
+                for (int i = 0; i < heads.length; i++) {
+                    int ref = refs.get(i);
+                    heads[i] = guestIndex != null && ref < lastSlotByRef.length ? lastSlotByRef[ref] : -1;
+                }
+                if (guestIndex == null) {
+                    wanted = new boolean[names.size()];
+                    for (int ref : refs) wanted[ref] = true;
+                }
+                n = count;
+                segs = segments;
+            }
+            if (wanted == null) {
+                // entries below the count were written before it was raised, and are never changed
+                java.nio.ByteBuffer entry = java.nio.ByteBuffer.allocate(4);
+                try {
+                    for (int slot : heads) {
+                        while (slot >= 0) {
+                            slots.add(slot);
+                            entry.clear();
+                            readFully(guestIndex, entry, guestIndexPosition(slot));
+                            slot = entry.getInt(0);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                Collections.sort(slots); // each chain runs newest first
+                return slots;
+            }
+            for (int slot = 0; slot < n; slot++) {
+                if (wanted[segs[slot >>> SEGMENT_BITS].getInt(offset(slot) + 20)]) slots.add(slot);
+            }
+            return slots;
+        }
+
+        // Open (creating it if needed) the guest index in `file` and bring it in line with the
+        // records: entries that do not match (a new file, or one left behind by a crash or by a
+        // compaction) are rewritten, and entries past the last record are cut off.
+        public synchronized void openGuestIndex(String file) throws IOException {
+            FileChannel index = FileChannel.open(Paths.get(file),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int[] last = new int[names.size()];
+            try {
+                java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(GUEST_INDEX_HEADER_BYTES);
+                index.read(header, 0);
+                if (header.getInt(0) != GUEST_INDEX_MAGIC || header.getShort(4) != GUEST_INDEX_VERSION) {
+                    index.truncate(0);
+                    header.clear();
+                    header.putInt(0, GUEST_INDEX_MAGIC).putShort(4, GUEST_INDEX_VERSION);
+                    writeFully(index, header, 0);
+                }
+                Arrays.fill(last, -1);
+                java.nio.ByteBuffer chunk = java.nio.ByteBuffer.allocate(GUEST_INDEX_CHUNK * 4);
+                for (int from = 0; from < count; from += GUEST_INDEX_CHUNK) {
+                    int n = Math.min(GUEST_INDEX_CHUNK, count - from);
+                    chunk.clear().limit(n * 4);
+                    int read = readFully(index, chunk, guestIndexPosition(from));
+                    boolean changed = false;
+                    for (int i = 0; i < n; i++) {
+                        int slot = from + i, ref = segment(slot).getInt(offset(slot) + 20);
+                        if (i * 4 + 4 > read || chunk.getInt(i * 4) != last[ref]) {
+                            chunk.putInt(i * 4, last[ref]);
+                            changed = true;
+                        }
+                        last[ref] = slot;
+                    }
+                    if (changed) {
+                        chunk.clear().limit(n * 4);
+                        writeFully(index, chunk, guestIndexPosition(from));
+                    }
+                }
+                index.truncate(guestIndexPosition(count));
+            } catch (IOException e) {
+                index.close();
+                throw e;
+            }
+            guestIndex = index;
+            lastSlotByRef = last;
+        }
+
+        // Chain the records in [from, to) into the guest index (the caller holds the store's lock)
+        private void indexGuests(int from, int to) throws IOException {
+            if (lastSlotByRef.length < names.size()) {
+                int old = lastSlotByRef.length;
+                lastSlotByRef = Arrays.copyOf(lastSlotByRef, Math.max(names.size(), old * 2));
+                Arrays.fill(lastSlotByRef, old, lastSlotByRef.length, -1);
+            }
+            int[] last = lastSlotByRef.clone(); // kept only once the entries are written
+            java.nio.ByteBuffer entries = java.nio.ByteBuffer.allocate((to - from) * 4);
+            for (int slot = from; slot < to; slot++) {
+                int ref = segment(slot).getInt(offset(slot) + 20);
+                entries.putInt(last[ref]);
+                last[ref] = slot;
+            }
+            entries.flip();
+            writeFully(guestIndex, entries, guestIndexPosition(from));
+            lastSlotByRef = last;
+        }
+
+        private static long guestIndexPosition(int slot) {
+            return GUEST_INDEX_HEADER_BYTES + 4L * slot;
+        }
+
+        // Read until `buf` is full or the file ends; returns the bytes read
+        private static int readFully(FileChannel ch, java.nio.ByteBuffer buf, long position) throws IOException {
+            int total = 0;
+            while (buf.hasRemaining()) {
+                int n = ch.read(buf, position + total);
+                if (n < 0) break;
+                total += n;
+            }
+            return total;
+        }
+
+        private static void writeFully(FileChannel ch, java.nio.ByteBuffer buf, long position) throws IOException {
+            for (long at = position; buf.hasRemaining(); ) at += ch.write(buf, at);
+        }
+
+        public synchronized List<String> guestNames() {
+            return new ArrayList<>(names);
+        }
+
+        private synchronized String name(int ref) {
+            return names.get(ref);
+        }
+
+        private String readId(int slot) {
+            MappedByteBuffer buf = segment(slot);
+            byte[] id = new byte[RecordCodec.ID_BYTES];
+            buf.get(offset(slot), id);
+            int len = 0;
+            while (len < id.length && id[len] != 0) len++;
+            return new String(id, 0, len, StandardCharsets.US_ASCII);
+        }
+
+        public Reservation read(int slot) {
+            MappedByteBuffer buf = segment(slot);
+            int pos = offset(slot);
+            byte[] id = new byte[RecordCodec.ID_BYTES];
+            buf.get(pos, id);
+            int len = 0;
+            while (len < id.length && id[len] != 0) len++;
+            Reservation r = new Reservation(new String(id, 0, len, StandardCharsets.US_ASCII),
+                    buf.getInt(pos + 16), name(buf.getInt(pos + 20)),
+                    LocalDate.ofEpochDay(buf.getInt(pos + 24)), LocalDate.ofEpochDay(buf.getInt(pos + 28)),
+                    RecordCodec.fromCents(buf.getLong(pos + 32)),
+                    ReservationStatus.values()[buf.get(pos + STATUS_OFFSET)]);
+            r.slot = slot;
+            return r;
+        }
+
+        public void append(Reservation r) throws IOException {
+            appendAll(Collections.singletonList(r));
+        }
+
+        // Write the reservations as the next records and assign their slots. The count is bumped
+        // once, after all of them, so a crash never leaves a torn record or half a batch counted.
+        // If any record cannot be written, none of the batch is counted.
+        public synchronized void appendAll(List<Reservation> batch) throws IOException {
+            checkWritable();
+            if ((long) count + batch.size() > Integer.MAX_VALUE) throw new IOException("Reservation store is full");
+            int slot = count;
+            for (Reservation r : batch) write(slot++, r);
+            if (guestIndex != null) indexGuests(count, slot);
+            slot = count;
+            for (Reservation r : batch) r.slot = slot++;
+            count = slot;
+            header.putInt(COUNT_OFFSET, count);
+        }
+
+        private void write(int slot, Reservation r) throws IOException {
+            byte[] id = r.reservationId.getBytes(StandardCharsets.US_ASCII);
+            if (id.length > RecordCodec.ID_BYTES) throw new IOException("Reservation id too long: " + r.reservationId);
+            long checkIn = r.checkIn.toEpochDay(), checkOut = r.checkOut.toEpochDay();
+            if (checkIn != (int) checkIn || checkOut != (int) checkOut) {
+                throw new IOException("Stay dates out of range: " + r.checkIn + " -> " + r.checkOut);
+            }
+            int guestRef = guestRef(r.guestName);
+            // double the capacity while it is small, then grow a segment at a time
+            if (slot >= capacity()) mapRecords(slot + Math.min(slot, SEGMENT_RECORDS));
+            MappedByteBuffer buf = segment(slot);
+            int p = offset(slot);
+            buf.put(p, new byte[RECORD_BYTES]);
+            buf.put(p, id);
+            buf.putInt(p + 16, r.roomId);
+            buf.putInt(p + 20, guestRef);
+            buf.putInt(p + 24, (int) checkIn);
+            buf.putInt(p + 28, (int) checkOut);
+            buf.putLong(p + 32, RecordCodec.toCents(r.amount));
+            buf.put(p + STATUS_OFFSET, (byte) r.status.ordinal());
+            sealRecord(slot);
+        }
+
+        // The newest generated id in the store: the header's, or the last record's if a crash kept
+        // that record but lost the header update (the next ids must still sort after it)
+        public synchronized long lastIssuedId() {
+            long last = header.getLong(LAST_ID_OFFSET);
+            return count == 0 ? last : Math.max(last, ReservationIdGenerator.value(readId(count - 1)));
+        }
+
+        public synchronized void advanceLastIssuedId(long value) {
+            if (value > header.getLong(LAST_ID_OFFSET)) header.putLong(LAST_ID_OFFSET, value);
+        }
+
+        // Newest archive batch whose records have been removed from this store
+        public long archiveGeneration() {
+            return header.getLong(ARCHIVE_GEN_OFFSET);
+        }
+
+        public synchronized void setArchiveGeneration(long generation) {
+            header.putLong(ARCHIVE_GEN_OFFSET, generation);
+        }
+
+        public synchronized void updateStatus(Reservation r) throws IOException {
+            checkWritable();
+            segment(r.slot).put(offset(r.slot) + STATUS_OFFSET, (byte) r.status.ordinal());
+            sealRecord(r.slot);
+        }
+
+        public synchronized void updateStatuses(List<Reservation> batch) throws IOException {
+            checkWritable();
+            for (Reservation r : batch) updateStatus(r);
+        }
+
+        private int guestRef(String name) throws IOException {
+            Integer ref = nameIndex.get(name);
+            if (ref != null) return ref;
+            namesOut.writeUTF(name);
+            namesOut.flush();
+            return internName(name);
+        }
+
+        private int internName(String name) {
+            int ref = names.size();
+            nameIndex.put(name, ref);
+            names.add(name);
+            refsByFoldedName.computeIfAbsent(ReservationManager.foldGuestName(name), k -> new ArrayList<>(1)).add(ref);
+            return ref;
+        }
+
+        // Write the mapped records, then the header, back to the file
+        private void force() {
+            for (MappedByteBuffer segment : segments) segment.force();
+            header.force();
+        }
+
+        public synchronized void flush() throws IOException {
+            namesOut.flush();
+            sync();
+        }
+
+        // Force everything written so far to disk, then the synced count it covered. Not
+        // synchronized, so appends and status updates carry on while the sync runs; names go first
+        // since records refer to them.
+        public void sync() throws IOException {
+            checkWritable();
+            int synced = size();
+            try {
+                namesFd.sync();
+                for (MappedByteBuffer segment : segments) segment.force();
+                synchronized (this) {
+                    if (synced > header.getInt(SYNCED_OFFSET)) header.putInt(SYNCED_OFFSET, synced);
+                }
+                header.force();
+            } catch (IOException | UncheckedIOException e) {
+                // force() reports a failed write back as UncheckedIOException
+                IOException cause = e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e;
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = cause;
+                        System.err.println("Reservation store failed to save, refusing further changes until restarted: " + cause.getMessage());
+                    }
+                }
+                throw cause;
+            }
+        }
+
+        private void checkWritable() throws IOException {
+            IOException failed = failure;
+            if (failed != null) throw new IOException("Reservation store refuses changes after a failed save", failed);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                namesOut.close();
+                if (guestIndex != null) guestIndex.close();
+                channel.close();
+            }
+        }
+    }
+
+    // ---------- Group commit ----------
+    // Callers ask for a commit after changing the store and get a future that completes once the
+    // change is on disk. Requests arriving within WINDOW_NANOS of the first one (up to MAX_BATCH)
+    // share one sync, so concurrent bookings pay for a single fsync between them.
+    static class GroupCommitter implements Closeable {
+        static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+        static final int MAX_BATCH = 256;
+
+        private final ReservationStore store;
+        private final BlockingQueue<CompletableFuture<Void>> pending = new LinkedBlockingQueue<>();
+        private final Thread thread;
+        private volatile boolean closed;
+
+        GroupCommitter(ReservationStore store) {
+            this.store = store;
+            this.thread = new Thread(this::run, "reservation-commit");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public CompletableFuture<Void> commit() {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            if (closed) done.completeExceptionally(new IOException("Reservation store is closed"));
+            else pending.add(done);
+            return done;
+        }
+
+        private void run() {
+            List<CompletableFuture<Void>> batch = new ArrayList<>(MAX_BATCH);
+            while (!closed || !pending.isEmpty()) {
+                try {
+                    CompletableFuture<Void> first = pending.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    long deadline = System.nanoTime() + WINDOW_NANOS;
+                    while (batch.size() < MAX_BATCH) {
+                        CompletableFuture<Void> next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    continue; // close() sets `closed`; the loop drains what is left
+                }
+                try {
+                    store.sync();
+                    // waiters resume on the common pool so their follow-up work never delays the next sync
+                    for (CompletableFuture<Void> done : batch) done.completeAsync(() -> null);
+                } catch (IOException e) {
+                    for (CompletableFuture<Void> done : batch) done.completeExceptionally(e);
+                }
+                batch.clear();
+            }
+        }
+
+        // Sync whatever is still pending and stop the commit thread
+        @Override
+        public void close() {
+            closed = true;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // a commit that raced with close() is refused rather than left hanging
+            for (CompletableFuture<Void> done; (done = pending.poll()) != null; ) {
+                done.completeExceptionally(new IOException("Reservation store is closed"));
+            }
+        }
+    }
+
+    // ---------- Reservation archive ----------
+    // Cold storage for reservations moved out of the store: an append-only file of batches. Each
+    // archiving run sorts its reservations by guest and writes them as batches of up to
+    // BATCH_RECORDS, all under the run's generation, so a guest's stays share one or two batches.
+    // A batch is a frame header (magic int, generation long, record count int, length of the rest
+    // of the frame int), an index (its length int, first and last id UTF, then a Bloom filter over
+    // the ids and case-folded guest names: word count int, words) and a GZIP payload of records:
+    // id UTF, room int, guest UTF, check-in int, check-out int, amount cents long, status byte.
+    // The indexes are read when the archive is opened, so a lookup only decompresses the batches
+    // that may hold a match.
+    static class ReservationArchive {
+        static final int FRAME_MAGIC = 0x48524149; // "HRAI"
+        static final int BATCH_RECORDS = 1024;
+        private static final int FRAME_HEADER_BYTES = 20;
+        private static final int FILTER_BITS_PER_KEY = 10;
+        private static final int FILTER_HASHES = 7; // about 1% false positives at 10 bits per key
+
+        private final String file;
+        private final List<Batch> batches = new ArrayList<>();
+
+        // Where a batch's payload is, and which ids and guests it may hold
+        private static class Batch {
+            long payloadPos;
+            int payloadBytes;
+            int count;
+            String firstId;
+            String lastId;
+            long[] filter;
+
+            boolean mayHoldId(String id) {
+                return id.compareTo(firstId) >= 0 && id.compareTo(lastId) <= 0 && mayContain(filter, id);
+            }
+
+            boolean mayHoldGuest(String folded) {
+                return mayContain(filter, folded);
+            }
+        }
+
+        // Read the batch indexes up to `generation`; batches after it belong to an unfinished run
+        public ReservationArchive(String file, long generation) {
+            this.file = file;
+            if (generation == 0 || !new File(file).exists()) return;
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                byte[] header = new byte[FRAME_HEADER_BYTES];
+                long pos = 0;
+                while (pos + FRAME_HEADER_BYTES <= in.length()) {
+                    in.seek(pos);
+                    in.readFully(header);
+                    DataInputStream frame = new DataInputStream(new ByteArrayInputStream(header));
+                    int magic = frame.readInt();
+                    long batchGeneration = frame.readLong();
+                    Batch batch = new Batch();
+                    batch.count = frame.readInt();
+                    long end = pos + FRAME_HEADER_BYTES + frame.readInt();
+                    if (magic != FRAME_MAGIC) throw new IOException("Damaged archive batch");
+                    if (batchGeneration > generation || end > in.length()) break;
+                    byte[] index = new byte[in.readInt()];
+                    in.readFully(index);
+                    DataInputStream idx = new DataInputStream(new ByteArrayInputStream(index));
+                    batch.firstId = idx.readUTF();
+                    batch.lastId = idx.readUTF();
+                    batch.filter = new long[idx.readInt()];
+                    for (int i = 0; i < batch.filter.length; i++) batch.filter[i] = idx.readLong();
+                    batch.payloadPos = in.getFilePointer();
+                    batch.payloadBytes = (int) (end - batch.payloadPos);
+                    batches.add(batch);
+                    pos = end;
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read archive " + file + ": " + e.getMessage());
+            }
+        }
+
+        // Archived reservations with this id, oldest batch first
+        public List<Reservation> findById(String id) {
+            return find(batch -> batch.mayHoldId(id), r -> r.reservationId.equals(id));
+        }
+
+        // Archived reservations of the guest (ignoring case), oldest batch first
+        public List<Reservation> findByGuest(String guestName) {
+            String folded = ReservationManager.foldGuestName(guestName);
+            return find(batch -> batch.mayHoldGuest(folded), r -> ReservationManager.foldGuestName(r.guestName).equals(folded));
+        }
+
+        private List<Reservation> find(java.util.function.Predicate<Batch> candidate,
+                                       java.util.function.Predicate<Reservation> matches) {
+            List<Reservation> found = new ArrayList<>();
+            if (batches.stream().noneMatch(candidate)) return found;
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                for (Batch batch : batches) {
+                    if (!candidate.test(batch)) continue;
+                    byte[] payload = new byte[batch.payloadBytes];
+                    in.seek(batch.payloadPos);
+                    in.readFully(payload);
+                    try (DataInputStream records = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(payload)))) {
+                        for (int i = 0; i < batch.count; i++) {
+                            Reservation r = new Reservation(records.readUTF(), records.readInt(), records.readUTF(),
+                                    LocalDate.ofEpochDay(records.readInt()), LocalDate.ofEpochDay(records.readInt()),
+                                    RecordCodec.fromCents(records.readLong()), ReservationStatus.values()[records.readByte()]);
+                            if (matches.test(r)) found.add(r);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read archive " + file + ": " + e.getMessage());
+            }
+            return found;
+        }
+
+        // Add one archiving run's reservations as indexed batches and force them to disk
+        public static void append(String file, long generation, List<Reservation> reservations) throws IOException {
+            List<Reservation> sorted = new ArrayList<>(reservations);
+            sorted.sort(Comparator.comparing((Reservation r) -> ReservationManager.foldGuestName(r.guestName))
+                    .thenComparing(r -> r.reservationId));
+            try (FileOutputStream fos = new FileOutputStream(file, true)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+                for (int from = 0; from < sorted.size(); from += BATCH_RECORDS) {
+                    writeBatch(out, generation, sorted.subList(from, Math.min(sorted.size(), from + BATCH_RECORDS)));
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+        }
+
+        private static void writeBatch(DataOutputStream out, long generation, List<Reservation> batch) throws IOException {
+            long[] filter = new long[(batch.size() * 2 * FILTER_BITS_PER_KEY + 63) >>> 6];
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            try (DataOutputStream records = new DataOutputStream(new GZIPOutputStream(payload))) {
+                for (Reservation r : batch) {
+                    records.writeUTF(r.reservationId);
+                    records.writeInt(r.roomId);
+                    records.writeUTF(r.guestName);
+                    records.writeInt(Math.toIntExact(r.checkIn.toEpochDay()));
+                    records.writeInt(Math.toIntExact(r.checkOut.toEpochDay()));
+                    records.writeLong(RecordCodec.toCents(r.amount));
+                    records.writeByte(r.status.ordinal());
+                    addToFilter(filter, r.reservationId);
+                    addToFilter(filter, ReservationManager.foldGuestName(r.guestName));
+                }
+            }
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream idx = new DataOutputStream(index);
+            idx.writeUTF(batch.stream().map(r -> r.reservationId).min(String::compareTo).get());
+            idx.writeUTF(batch.stream().map(r -> r.reservationId).max(String::compareTo).get());
+            idx.writeInt(filter.length);
+            for (long word : filter) idx.writeLong(word);
+            out.writeInt(FRAME_MAGIC);
+            out.writeLong(generation);
+            out.writeInt(batch.size());
+            out.writeInt(4 + index.size() + payload.size());
+            out.writeInt(index.size());
+            index.writeTo(out);
+            payload.writeTo(out);
+        }
+
+        // Bloom filter bits come from String.hashCode, which is specified, so a filter written by
+        // one JVM reads the same in any other
+        private static void addToFilter(long[] filter, String key) {
+            long hash = key.hashCode() * 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                long bit = filterBit(hash, i, filter.length);
+                filter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        private static boolean mayContain(long[] filter, String key) {
+            long hash = key.hashCode() * 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                long bit = filterBit(hash, i, filter.length);
+                if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        private static long filterBit(long hash, int i, int words) {
+            return Integer.toUnsignedLong((int) (hash >>> 32) + i * ((int) hash | 1)) % (words * 64L);
+        }
+
+        // Cut off batches newer than `generation` (and any torn tail) left by an interrupted run
+        public static void discardAfter(String file, long generation) throws IOException {
+            if (!new File(file).exists()) return;
+            try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(FRAME_HEADER_BYTES);
+                long pos = 0;
+                while (true) {
+                    header.clear();
+                    if (channel.read(header, pos) < FRAME_HEADER_BYTES) break;
+                    long end = pos + FRAME_HEADER_BYTES + header.getInt(16);
+                    if (header.getInt(0) != FRAME_MAGIC || header.getLong(4) > generation || end > channel.size()) break;
+                    pos = end;
+                }
+                if (pos < channel.size()) {
+                    channel.truncate(pos);
+                    channel.force(true);
+                }
+            }
+        }
+    }
+
+    // ---------- Reservation ids ----------
+    // Unique, time-ordered ids: milliseconds since ID_EPOCH in the high bits and a sequence in the
+    // low SEQUENCE_BITS, issued with a CAS loop so booking threads never block each other. Ids are
+    // rendered as "R" plus fixed-width base 36, so they sort by creation time as plain strings and
+    // can never equal the 5-character ids issued before this generator.
+    static class ReservationIdGenerator {
+        private static final long ID_EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+        private static final int SEQUENCE_BITS = 12;
+        private static final int ID_DIGITS = 11;
+
+        private final AtomicLong last = new AtomicLong();
+
+        public String next() {
+            long now = (System.currentTimeMillis() - ID_EPOCH) << SEQUENCE_BITS;
+            while (true) {
+                long prev = last.get();
+                // a clock step backwards, or more than 4096 ids in a millisecond, borrows from later
+                long id = Math.max(now, prev + 1);
+                if (last.compareAndSet(prev, id)) return format(id);
+            }
+        }
+
+        public long lastIssued() {
+            return last.get();
+        }
+
+        // Never issue `value` or anything below it again (it was persisted by an earlier run)
+        public void advancePast(long value) {
+            last.accumulateAndGet(value, Math::max);
+        }
+
+        // When a generated id was issued, or Long.MIN_VALUE for ids from before this generator
+        static long issuedAtMillis(String id) {
+            long value = value(id);
+            return value == Long.MIN_VALUE ? Long.MIN_VALUE : (value >>> SEQUENCE_BITS) + ID_EPOCH;
+        }
+
+        // The number a generated id stands for (ids compare as their numbers do), or
+        // Long.MIN_VALUE for ids from before this generator
+        static long value(String id) {
+            if (id.length() != ID_DIGITS + 1 || id.charAt(0) != 'R') return Long.MIN_VALUE;
+            try {
+                return Long.parseLong(id.substring(1), 36);
+            } catch (NumberFormatException e) {
+                return Long.MIN_VALUE;
+            }
+        }
+
+        static String format(long id) {
+            String digits = Long.toString(id, 36).toUpperCase(Locale.ROOT);
+            StringBuilder sb = new StringBuilder(ID_DIGITS + 1).append('R');
+            for (int i = digits.length(); i < ID_DIGITS; i++) sb.append('0');
+            return sb.append(digits).toString();
+        }
+    }
+
+    // ---------- Room registry ----------
+    // Immutable int -> Room map with open addressing (linear probing, Fibonacci hashing), so a
+    // lookup by room number is a couple of array reads with no boxing. Each room also gets a dense
+    // index 0..size-1 in list order, for per-room arrays.
+    static class RoomRegistry {
+        private final int[] keys;
+        private final Room[] values;
+        private final int[] indexes;
+        private final Room[] byIndex;
+        private final int shift;
+        private final int size;
+
+        RoomRegistry(List<Room> rooms) {
+            int capacity = Integer.highestOneBit(Math.max(2, rooms.size() * 2 - 1)) << 1; // load factor <= 0.5
+            this.keys = new int[capacity];
+            this.values = new Room[capacity];
+            this.indexes = new int[capacity];
+            this.byIndex = new Room[rooms.size()];
+            this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+            int n = 0;
+            for (Room room : rooms) {
+                int i = probe(room.id);
+                if (values[i] != null) continue; // duplicate room number: the first one wins
+                keys[i] = room.id;
+                values[i] = room;
+                byIndex[n] = room;
+                indexes[i] = n++;
+            }
+            this.size = n;
+        }
+
+        public Room get(int roomId) {
+            return values[probe(roomId)];
+        }
+
+        // Dense index of the room, or -1 if there is no such room
+        public int indexOf(int roomId) {
+            int i = probe(roomId);
+            return values[i] == null ? -1 : indexes[i];
+        }
+
+        // The room with this dense index
+        public Room room(int index) {
+            return byIndex[index];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // Slot holding roomId, or the empty slot where it would go
+        private int probe(int roomId) {
+            int mask = keys.length - 1;
+            int i = (roomId * 0x9E3779B9) >>> shift;
+            while (values[i] != null && keys[i] != roomId) i = (i + 1) & mask;
+            return i;
+        }
+    }
+
+    // ---------- Room catalog ----------
+    // Rooms partitioned by category, each partition sorted by price (rooms with the same price
+    // keep their list order), so a search only walks its own category, cheapest first.
+    static class RoomCatalog {
+        private final EnumMap<Category, Room[]> byCategory = new EnumMap<>(Category.class);
+
+        RoomCatalog(List<Room> rooms) {
+            for (Category category : Category.values()) {
+                byCategory.put(category, rooms.stream()
+                        .filter(r -> r.category == category)
+                        .sorted(Comparator.comparingDouble(r -> r.pricePerNight))
+                        .toArray(Room[]::new));
+            }
+        }
+
+        // Read-only view of the category's rooms, cheapest first
+        public List<Room> byPrice(Category category) {
+            return Collections.unmodifiableList(Arrays.asList(byCategory.get(category)));
+        }
+
+        public int count(Category category) {
+            return byCategory.get(category).length;
+        }
+    }
+
+    // ---------- Occupancy calendar ----------
+    // One bit per night (epoch day) for a fixed window of about two years, set while a
+    // stay holding the room covers that night.
+    static class OccupancyCalendar {
+        static final int WINDOW_DAYS = 768;
+
+        private final long baseDay;
+        private final long[] words = new long[WINDOW_DAYS / 64];
+
+        public OccupancyCalendar(long baseDay) {
+            this.baseDay = baseDay;
+        }
+
+        public OccupancyCalendar copy() {
+            OccupancyCalendar copy = new OccupancyCalendar(baseDay);
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            return copy;
+        }
+
+        public long baseDay() {
+            return baseDay;
+        }
+
+        public long endDay() {
+            return baseDay + WINDOW_DAYS;
+        }
+
+        // True if the night is taken; the night must be inside the window
+        public boolean isTaken(long day) {
+            int i = (int) (day - baseDay);
+            return (words[i >>> 6] & (1L << i)) != 0;
+        }
+
+        public boolean covers(long fromDay, long toDay) {
+            return fromDay >= baseDay && toDay <= endDay();
+        }
+
+        // Set or clear the nights [fromDay, toDay), clipped to the window
+        public void mark(long fromDay, long toDay, boolean occupied) {
+            long from = Math.max(fromDay, baseDay), to = Math.min(toDay, endDay());
+            if (from >= to) return;
+            int start = (int) (from - baseDay);
+            int end = (int) (to - baseDay);
+            for (int i = start; i < end; ) {
+                int w = i >>> 6;
+                int stop = Math.min(end, (w + 1) << 6);
+                long mask = rangeMask(i, stop);
+                if (occupied) words[w] |= mask;
+                else words[w] &= ~mask;
+                i = stop;
+            }
+        }
+
+        // True if no night in [fromDay, toDay) is taken; the range must be non-empty and covered
+        public boolean isFree(long fromDay, long toDay) {
+            int start = (int) (fromDay - baseDay);
+            int end = (int) (toDay - baseDay);
+            int first = start >>> 6, last = (end - 1) >>> 6;
+            if (first == last) return (words[first] & rangeMask(start, end)) == 0;
+            if ((words[first] & (-1L << start)) != 0) return false;
+            for (int w = first + 1; w < last; w++) {
+                if (words[w] != 0) return false;
+            }
+            return (words[last] & (-1L >>> -end)) == 0;
+        }
+
+        // Write the free nights of [fromDay, fromDay + nights) as set bits into dest, starting at
+        // dest[offset] (night i is bit i % 64 of word i / 64). The range must be covered.
+        public void copyFree(long fromDay, int nights, long[] dest, int offset) {
+            int start = (int) (fromDay - baseDay);
+            int shift = start & 63;
+            int words = (nights + 63) >>> 6;
+            for (int k = 0; k < words; k++) {
+                int w = (start >>> 6) + k;
+                long taken = words(w) >>> shift;
+                if (shift != 0) taken |= words(w + 1) << (64 - shift);
+                dest[offset + k] = ~taken;
+            }
+            if ((nights & 63) != 0) dest[offset + words - 1] &= -1L >>> -nights;
+        }
+
+        private long words(int w) {
+            return w < this.words.length ? this.words[w] : 0;
+        }
+
+        // Add 1 to counts[i] for each night i of the window taken here but not in `before`, and
+        // subtract 1 for each night free here but taken there. A null `before` counts as all free.
+        void countChanges(OccupancyCalendar before, int[] counts) {
+            for (int w = 0; w < words.length; w++) {
+                long changed = before == null ? words[w] : words[w] ^ before.words[w];
+                while (changed != 0) {
+                    int bit = Long.numberOfTrailingZeros(changed);
+                    counts[(w << 6) + bit] += (words[w] & (1L << bit)) != 0 ? 1 : -1;
+                    changed &= changed - 1;
+                }
+            }
+        }
+
+        // Bits [start, end) of the word holding `start`; end may be the next word boundary
+        private static long rangeMask(int start, int end) {
+            return (-1L << start) & (-1L >>> -end);
+        }
+    }
+
+    // ---------- Category inventory ----------
+    // Held rooms per category and night for the calendar window starting at baseDay, so "how many
+    // left" is read from counters instead of visiting rooms. Part of an availability snapshot and,
+    // like it, never changed once published: a snapshot with changed rooms gets a copy that shares
+    // the counters of every category it does not touch.
+    static class CategoryInventory {
+        final long baseDay;
+        private final int[] roomCount;
+        private final int[][] taken;
+        private final boolean[] owned; // counters this copy may change, before it is published
+
+        CategoryInventory(long baseDay, Category[] categories) {
+            this.baseDay = baseDay;
+            this.roomCount = new int[Category.values().length];
+            for (Category category : categories) roomCount[category.ordinal()]++;
+            this.taken = new int[roomCount.length][OccupancyCalendar.WINDOW_DAYS];
+            this.owned = new boolean[roomCount.length];
+            Arrays.fill(owned, true);
+        }
+
+        private CategoryInventory(CategoryInventory from) {
+            this.baseDay = from.baseDay;
+            this.roomCount = from.roomCount;
+            this.taken = from.taken.clone();
+            this.owned = new boolean[taken.length];
+        }
+
+        CategoryInventory copy() {
+            return new CategoryInventory(this);
+        }
+
+        public boolean covers(long fromDay, long toDay) {
+            return fromDay >= baseDay && toDay <= baseDay + OccupancyCalendar.WINDOW_DAYS;
+        }
+
+        void addRoom(Category category, OccupancyCalendar cal) {
+            cal.countChanges(null, counters(category));
+        }
+
+        // Count a room's calendar changing from `before` to `after`. False if either is missing or
+        // not on this window, in which case the counters can no longer be kept exact.
+        boolean change(Category category, OccupancyCalendar before, OccupancyCalendar after) {
+            if (before == null || after == null || before.baseDay() != baseDay || after.baseDay() != baseDay) return false;
+            after.countChanges(before, counters(category));
+            return true;
+        }
+
+        private int[] counters(Category category) {
+            int c = category.ordinal();
+            if (!owned[c]) {
+                taken[c] = taken[c].clone();
+                owned[c] = true;
+            }
+            return taken[c];
+        }
+
+        // True if every room of the category is held on some night of [fromDay, toDay)
+        public boolean soldOut(Category category, long fromDay, long toDay) {
+            int[] counts = taken[category.ordinal()];
+            int rooms = roomCount[category.ordinal()];
+            for (long day = fromDay; day < toDay; day++) {
+                if (counts[(int) (day - baseDay)] >= rooms) return true;
+            }
+            return false;
+        }
+
+        // Rooms of the category free on each night of [fromDay, toDay), which must be covered
+        public int[] available(Category category, long fromDay, long toDay) {
+            if (!covers(fromDay, toDay)) throw new IllegalArgumentException("Range outside the inventory window");
+            int[] counts = taken[category.ordinal()];
+            int rooms = roomCount[category.ordinal()];
+            int[] free = new int[(int) Math.max(0, toDay - fromDay)];
+            for (int i = 0; i < free.length; i++) free[i] = rooms - counts[(int) (fromDay + i - baseDay)];
+            return free;
+        }
+    }
+
+    // ---------- Availability snapshot ----------
+    // Immutable room index -> calendar table. The calendars in it are never modified; a change
+    // makes a new snapshot that copies the top-level array and the one 64-room chunk holding each
+    // changed room, sharing everything else with the previous snapshot. The snapshot also carries
+    // the category counters of exactly these calendars, or none while the calendar window slides.
+    static final class AvailabilitySnapshot {
+        private static final int CHUNK_BITS = 6;
+        private static final int CHUNK = 1 << CHUNK_BITS;
+
+        private final OccupancyCalendar[][] chunks;
+        private final Category[] categories; // by room index
+        private final CategoryInventory inventory;
+
+        AvailabilitySnapshot(RoomRegistry registry) {
+            int rooms = registry.size();
+            this.chunks = new OccupancyCalendar[(rooms + CHUNK - 1) >>> CHUNK_BITS][];
+            for (int c = 0; c < chunks.length; c++) chunks[c] = new OccupancyCalendar[CHUNK];
+            this.categories = new Category[rooms];
+            for (int i = 0; i < rooms; i++) categories[i] = registry.room(i).category;
+            this.inventory = null;
+        }
+
+        private AvailabilitySnapshot(OccupancyCalendar[][] chunks, Category[] categories, CategoryInventory inventory) {
+            this.chunks = chunks;
+            this.categories = categories;
+            this.inventory = inventory;
+        }
+
+        // The room's calendar, or null if it has none (yet) or the index is unknown
+        public OccupancyCalendar get(int index) {
+            if (index < 0 || (index >>> CHUNK_BITS) >= chunks.length) return null;
+            return chunks[index >>> CHUNK_BITS][index & (CHUNK - 1)];
+        }
+
+        // Held rooms per category and night over these calendars, or null if not counted
+        public CategoryInventory inventory() {
+            return inventory;
+        }
+
+        AvailabilitySnapshot with(List<Integer> indexes, List<OccupancyCalendar> calendars) {
+            OccupancyCalendar[][] next = chunks.clone();
+            CategoryInventory counts = inventory == null ? null : inventory.copy();
+            for (int i = 0; i < indexes.size(); i++) {
+                int index = indexes.get(i);
+                int c = index >>> CHUNK_BITS;
+                if (c >= next.length || index >= categories.length) continue;
+                if (next[c] == chunks[c]) next[c] = chunks[c].clone();
+                OccupancyCalendar before = next[c][index & (CHUNK - 1)];
+                if (counts != null && !counts.change(categories[index], before, calendars.get(i))) counts = null;
+                next[c][index & (CHUNK - 1)] = calendars.get(i);
+            }
+            return new AvailabilitySnapshot(next, categories, counts);
+        }
+
+        // This snapshot with its counters counted afresh for the window starting at baseDay; none
+        // if some room's calendar is not on that window yet
+        AvailabilitySnapshot withInventory(long baseDay) {
+            CategoryInventory counts = new CategoryInventory(baseDay, categories);
+            for (int index = 0; index < categories.length; index++) {
+                OccupancyCalendar cal = get(index);
+                if (cal == null || cal.baseDay() != baseDay) return new AvailabilitySnapshot(chunks, categories, null);
+                counts.addRoom(categories[index], cal);
+            }
+            return new AvailabilitySnapshot(chunks, categories, counts);
+        }
+    }
+
+    // ---------- Availability grid ----------
+    // Result of ReservationManager.availabilityGrid: one bit per room and night, set when the room
+    // is free that night. Each room's row takes wordsPerRoom longs, night i in bit i % 64 of the
+    // row's word i / 64.
+    static class AvailabilityGrid {
+        final long fromDay;
+        final int nights;
+        final int[] roomIds;
+        final int wordsPerRoom;
+        final long[] bits;
+
+        AvailabilityGrid(long fromDay, int nights, List<Room> rooms) {
+            this.fromDay = fromDay;
+            this.nights = nights;
+            this.roomIds = new int[rooms.size()];
+            for (int i = 0; i < roomIds.length; i++) roomIds[i] = rooms.get(i).id;
+            this.wordsPerRoom = (nights + 63) >>> 6;
+            if ((long) roomIds.length * wordsPerRoom > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Availability grid too large: " + roomIds.length + " rooms x " + nights + " nights");
+            }
+            this.bits = new long[roomIds.length * wordsPerRoom];
+        }
+
+        public int rooms() {
+            return roomIds.length;
+        }
+
+        public int roomId(int row) {
+            return roomIds[row];
+        }
+
+        public boolean isFree(int row, int night) {
+            return (bits[row * wordsPerRoom + (night >>> 6)] & (1L << night)) != 0;
+        }
+
+        // Number of rooms free on the given night
+        public int freeRooms(int night) {
+            int free = 0;
+            for (int i = night >>> 6; i < bits.length; i += wordsPerRoom) {
+                if ((bits[i] & (1L << night)) != 0) free++;
+            }
+            return free;
+        }
+
+        // Row as '1' (free) and '0' (taken) characters, one per night
+        public String row(int row) {
+            StringBuilder sb = new StringBuilder(nights);
+            for (int night = 0; night < nights; night++) sb.append(isFree(row, night) ? '1' : '0');
+            return sb.toString();
+        }
+
+        // Fill a row from the room's stays, for ranges the occupancy calendar does not cover
+        void fillFromSchedule(int row, TreeMap<Long, Reservation> schedule) {
+            int offset = row * wordsPerRoom;
+            Arrays.fill(bits, offset, offset + wordsPerRoom, -1L);
+            if ((nights & 63) != 0) bits[offset + wordsPerRoom - 1] = -1L >>> -nights;
+            if (schedule == null || nights == 0) return;
+            long toDay = fromDay + nights;
+            // include the stay already running at fromDay
+            Long first = schedule.floorKey(fromDay);
+            for (Reservation r : schedule.subMap(first != null ? first : fromDay, true, toDay, false).values()) {
+                int start = (int) Math.max(0, r.checkIn.toEpochDay() - fromDay);
+                int end = (int) Math.min(nights, r.checkOut.toEpochDay() - fromDay);
+                for (int night = start; night < end; night++) bits[offset + (night >>> 6)] &= ~(1L << night);
+            }
+        }
+    }
+
+    // ---------- Payments ----------
+    // Charges complete asynchronously, so a booking never holds its caller while a payment runs
+    interface PaymentGateway {
+        CompletableFuture<Boolean> charge(double amount);
+    }
+
+    // ---------- Payment simulator ----------
+    static class PaymentSimulator implements PaymentGateway {
+        private static final Executor PROCESSING_DELAY = CompletableFuture.delayedExecutor(400, TimeUnit.MILLISECONDS);
+
+        // Simulate payment: 85% chance succeed
+        @Override
+        public CompletableFuture<Boolean> charge(double amount) {
+            System.out.printf("Processing payment of %.2f ...\n", amount);
+            return CompletableFuture.supplyAsync(() -> {
+                boolean ok = Math.random() < 0.85;
+                System.out.println(ok ? "Payment approved." : "Payment declined.");
+                return ok;
+            }, PROCESSING_DELAY);
+        }
+    }
+
+    // ---------- HTTP front end ----------
+    // JSON over HTTP for many concurrent clients of one ReservationManager:
+    //   GET    /rooms                                      all rooms
+    //   GET    /rooms/available?category=&from=&to=        search (dates as YYYY-MM-DD)
+    //   GET    /rooms/grid?from=&to=[&category=]           free nights per room as "1"/"0" strings
+    //                                                      (at most MAX_QUERY_NIGHTS nights)
+    //   GET    /rooms/inventory?category=&from=&to=        rooms of the category left per night
+    //                                                      (at most MAX_QUERY_NIGHTS nights)
+    //   GET    /rooms/flexible?from=&to=[&flex=3][&category=]  cheapest options with dates moved up to flex days
+    //   POST   /reservations  room=&guest=&from=&to=       book (query string or form body)
+    //   GET    /reservations?guest=                        bookings of a guest
+    //   GET    /reservations/{id}                          booking details
+    //   DELETE /reservations/{id}                          cancel
+    // Over a HotelGroup, each hotel's API above sits under /hotels/{hotel}, next to queries that
+    // fan out to every hotel:
+    //   GET    /hotels                                     hotel ids
+    //   *      /hotels/{hotel}/rooms..., /hotels/{hotel}/reservations...   one hotel, as above
+    //   GET    /cities/{city}/rooms/available?category=&from=&to=   search every hotel in the city
+    //   GET    /reservations?guest=                        bookings of a guest, by hotel id
+    // Requests run on virtual threads where the JDK has them (21+), otherwise on a cached pool.
+    // A booking's exchange is answered from the payment callback, so no thread waits on payment.
+    static class HttpFrontEnd {
+        static final int MAX_QUERY_NIGHTS = 731; // two years
+
+        private final HttpServer server;
+        private final ExecutorService executor = requestExecutor();
+
+        public HttpFrontEnd(ReservationManager manager, int port) throws IOException {
+            this(port);
+            server.createContext("/rooms", ex -> handleRooms(ex, manager, ex.getRequestURI().getPath()));
+            server.createContext("/reservations", ex -> handleReservations(ex, manager, ex.getRequestURI().getPath()));
+        }
+
+        public HttpFrontEnd(HotelGroup group, int port) throws IOException {
+            this(port);
+            server.createContext("/hotels", ex -> handleHotels(ex, group));
+            server.createContext("/cities", ex -> handleCities(ex, group));
+            server.createContext("/reservations", ex -> handleGuestInAllHotels(ex, group));
+        }
+
+        private HttpFrontEnd(int port) throws IOException {
+            this.server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.setExecutor(executor);
+        }
+
+        public void start() {
+            server.start();
+        }
+
+        public void stop() {
+            server.stop(0);
+            executor.shutdown();
+        }
+
+        private static ExecutorService requestExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool();
+            }
+        }
+
+        // `path` starts at /rooms (below the hotel's prefix, for a hotel group)
+        private void handleRooms(HttpExchange ex, ReservationManager manager, String path) throws IOException {
+            try {
+                if (!ex.getRequestMethod().equals("GET")) {
+                    send(ex, 405, error("Method not allowed"));
+                } else if (path.equals("/rooms")) {
+                    send(ex, 200, roomsJson(manager.rooms));
+                } else if (path.equals("/rooms/available")) {
+                    Map<String, String> q = params(ex);
+                    List<Room> rooms = manager.searchAvailableRooms(Category.fromString(required(q, "category")),
+                            LocalDate.parse(required(q, "from")), LocalDate.parse(required(q, "to")));
+                    send(ex, 200, roomsJson(rooms));
+                } else if (path.equals("/rooms/flexible")) {
+                    Map<String, String> q = params(ex);
+                    Category[] categories = q.containsKey("category")
+                            ? new Category[]{Category.fromString(q.get("category"))} : new Category[0];
+                    int flex = Integer.parseInt(q.getOrDefault("flex", "3"));
+                    if (flex < 0 || flex > 30) throw new IllegalArgumentException("flex must be between 0 and 30");
+                    StringJoiner json = new StringJoiner(",", "[", "]");
+                    for (StayOption o : manager.flexibleSearch(LocalDate.parse(required(q, "from")),
+                            LocalDate.parse(required(q, "to")), flex, categories)) {
+                        json.add(String.format(Locale.ROOT, "{\"room\":%s,\"checkIn\":\"%s\",\"checkOut\":\"%s\",\"shiftDays\":%d,\"total\":%.2f}",
+                                json(o.room), o.checkIn, o.checkOut, o.shiftDays, o.totalPrice));
+                    }
+                    send(ex, 200, json.toString());
+                } else if (path.equals("/rooms/inventory")) {
+                    Map<String, String> q = params(ex);
+                    LocalDate from = LocalDate.parse(required(q, "from")), to = LocalDate.parse(required(q, "to"));
+                    checkSpan(from, to);
+                    int[] free = manager.availableRoomsPerNight(Category.fromString(required(q, "category")), from, to);
+                    send(ex, 200, Arrays.toString(free).replace(" ", ""));
+                } else if (path.equals("/rooms/grid")) {
+                    Map<String, String> q = params(ex);
+                    Category[] categories = q.containsKey("category")
+                            ? new Category[]{Category.fromString(q.get("category"))} : new Category[0];
+                    LocalDate from = LocalDate.parse(required(q, "from")), to = LocalDate.parse(required(q, "to"));
+                    checkSpan(from, to);
+                    AvailabilityGrid grid = manager.availabilityGrid(from, to, categories);
+                    StringJoiner json = new StringJoiner(",", "{\"from\":\"" + from + "\",\"nights\":" + grid.nights + ",\"rooms\":[", "]}");
+                    for (int row = 0; row < grid.rooms(); row++) {
+                        json.add("{\"id\":" + grid.roomId(row) + ",\"free\":\"" + grid.row(row) + "\"}");
+                    }
+                    send(ex, 200, json.toString());
+                } else {
+                    send(ex, 404, error("Not found"));
+                }
+            } catch (IllegalArgumentException | DateTimeException e) {
+                send(ex, 400, error(e.getMessage()));
+            } catch (RuntimeException e) {
+                sendInternalError(ex, e);
+            }
+        }
+
+        private void handleReservations(HttpExchange ex, ReservationManager manager, String path) throws IOException {
+            try {
+                String method = ex.getRequestMethod();
+                String id = path.startsWith("/reservations/") ? path.substring("/reservations/".length()) : null;
+                if (id == null && method.equals("POST")) {
+                    book(ex, manager);
+                } else if (id == null && method.equals("GET")) {
+                    StringJoiner json = new StringJoiner(",", "[", "]");
+                    for (Reservation r : manager.getReservationsForGuest(required(params(ex), "guest"))) json.add(json(r));
+                    send(ex, 200, json.toString());
+                } else if (id != null && (method.equals("GET") || method.equals("DELETE"))) {
+                    Reservation r = manager.getReservationById(id);
+                    if (r == null) send(ex, 404, error("Reservation not found"));
+                    else if (method.equals("GET")) send(ex, 200, json(r));
+                    else if (manager.cancelReservation(id)) send(ex, 200, json(r));
+                    else send(ex, 409, error("Reservation is " + r.status + " and cannot be cancelled"));
+                } else {
+                    send(ex, 405, error("Method not allowed"));
+                }
+            } catch (IllegalArgumentException | DateTimeException e) {
+                send(ex, 400, error(e.getMessage()));
+            } catch (CompletionException e) {
+                send(ex, 500, error("Failed to save reservation"));
+            } catch (RuntimeException e) {
+                sendInternalError(ex, e);
+            }
+        }
+
+        // /hotels, or /hotels/{hotel} followed by a path of the single-hotel API
+        private void handleHotels(HttpExchange ex, HotelGroup group) throws IOException {
+            String path = ex.getRequestURI().getPath();
+            if (path.equals("/hotels") || path.equals("/hotels/")) {
+                if (!ex.getRequestMethod().equals("GET")) {
+                    send(ex, 405, error("Method not allowed"));
+                    return;
+                }
+                StringJoiner json = new StringJoiner(",", "[", "]");
+                for (String hotelId : group.hotels()) json.add(quote(hotelId));
+                send(ex, 200, json.toString());
+                return;
+            }
+            if (!path.startsWith("/hotels/")) {
+                send(ex, 404, error("Not found"));
+                return;
+            }
+            String rest = path.substring("/hotels/".length());
+            int slash = rest.indexOf('/');
+            String hotelId = slash < 0 ? rest : rest.substring(0, slash);
+            String subPath = slash < 0 ? "" : rest.substring(slash);
+            if (!group.hotels().contains(hotelId)) {
+                send(ex, 404, error("Hotel not found"));
+            } else if (subPath.equals("/rooms") || subPath.startsWith("/rooms/")) {
+                handleRooms(ex, group.hotel(hotelId), subPath);
+            } else if (subPath.equals("/reservations") || subPath.startsWith("/reservations/")) {
+                handleReservations(ex, group.hotel(hotelId), subPath);
+            } else {
+                send(ex, 404, error("Not found"));
+            }
+        }
+
+        // /cities/{city}/rooms/available?category=&from=&to=
+        private void handleCities(HttpExchange ex, HotelGroup group) throws IOException {
+            String path = ex.getRequestURI().getPath();
+            String prefix = "/cities/", suffix = "/rooms/available";
+            try {
+                if (!ex.getRequestMethod().equals("GET")) {
+                    send(ex, 405, error("Method not allowed"));
+                } else if (!path.startsWith(prefix) || !path.endsWith(suffix) || path.length() <= prefix.length() + suffix.length()) {
+                    send(ex, 404, error("Not found"));
+                } else {
+                    Map<String, String> q = params(ex);
+                    String city = path.substring(prefix.length(), path.length() - suffix.length());
+                    StringJoiner json = new StringJoiner(",", "[", "]");
+                    for (HotelRoom h : group.searchCity(city, Category.fromString(required(q, "category")),
+                            LocalDate.parse(required(q, "from")), LocalDate.parse(required(q, "to")))) {
+                        json.add("{\"hotel\":" + quote(h.hotelId) + ",\"room\":" + json(h.room) + "}");
+                    }
+                    send(ex, 200, json.toString());
+                }
+            } catch (IllegalArgumentException | DateTimeException e) {
+                send(ex, 400, error(e.getMessage()));
+            } catch (RuntimeException e) {
+                sendInternalError(ex, e);
+            }
+        }
+
+        // /reservations?guest= over every hotel, as {"hotel id": [bookings], ...}
+        private void handleGuestInAllHotels(HttpExchange ex, HotelGroup group) throws IOException {
+            try {
+                if (!ex.getRequestURI().getPath().equals("/reservations")) {
+                    send(ex, 404, error("Not found"));
+                } else if (!ex.getRequestMethod().equals("GET")) {
+                    send(ex, 405, error("Method not allowed"));
+                } else {
+                    StringJoiner json = new StringJoiner(",", "{", "}");
+                    group.getReservationsForGuest(required(params(ex), "guest")).forEach((hotelId, found) -> {
+                        StringJoiner list = new StringJoiner(",", "[", "]");
+                        for (Reservation r : found) list.add(json(r));
+                        json.add(quote(hotelId) + ":" + list);
+                    });
+                    send(ex, 200, json.toString());
+                }
+            } catch (IllegalArgumentException e) {
+                send(ex, 400, error(e.getMessage()));
+            } catch (RuntimeException e) {
+                sendInternalError(ex, e);
+            }
+        }
+
+        // Rejects an unknown room (404) and an empty or inverted stay (400) up front, so a 409
+        // from the booking itself only ever means the room is taken
+        private void book(HttpExchange ex, ReservationManager manager) throws IOException {
+            Map<String, String> q = params(ex);
+            int roomId = Integer.parseInt(required(q, "room"));
+            String guest = required(q, "guest");
+            LocalDate from = LocalDate.parse(required(q, "from")), to = LocalDate.parse(required(q, "to"));
+            if (manager.getRoom(roomId) == null) {
+                send(ex, 404, error("Room not found"));
+                return;
+            }
+            if (!from.isBefore(to)) throw new IllegalArgumentException("from must be before to");
+            manager.makeReservationAsync(roomId, guest, from, to)
+                    .whenComplete((res, failure) -> {
+                        try {
+                            if (failure != null) send(ex, 500, error("Booking failed"));
+                            else if (res == null) send(ex, 409, error("Room not available for the given dates"));
+                            else send(ex, res.status == ReservationStatus.CONFIRMED ? 201 : 402, json(res));
+                        } catch (IOException ignored) {
+                            // client went away
+                        }
+                    });
+        }
+
+        // Query string parameters, plus form fields from a POST body
+        private static Map<String, String> params(HttpExchange ex) throws IOException {
+            Map<String, String> params = new HashMap<>();
+            parseForm(ex.getRequestURI().getRawQuery(), params);
+            if (ex.getRequestMethod().equals("POST")) {
+                try (InputStream in = ex.getRequestBody()) {
+                    parseForm(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+                }
+            }
+            return params;
+        }
+
+        private static void parseForm(String form, Map<String, String> into) {
+            if (form == null || form.isEmpty()) return;
+            for (String pair : form.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq <= 0) continue;
+                into.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8).trim());
+            }
+        }
+
+        // Keep per-night answers bounded: a far-off `to` would otherwise size the response
+        private static void checkSpan(LocalDate from, LocalDate to) {
+            if (to.toEpochDay() - from.toEpochDay() > MAX_QUERY_NIGHTS) {
+                throw new IllegalArgumentException("Date range longer than " + MAX_QUERY_NIGHTS + " nights");
+            }
+        }
+
+        // Anything else a handler throws is a bug; answer rather than drop the exchange
+        private static void sendInternalError(HttpExchange ex, RuntimeException e) throws IOException {
+            System.err.println("Request " + ex.getRequestMethod() + " " + ex.getRequestURI() + " failed: " + e);
+            send(ex, 500, error("Internal error"));
+        }
+
+        private static String required(Map<String, String> params, String name) {
+            String value = params.get(name);
+            if (value == null || value.isEmpty()) throw new IllegalArgumentException("Missing parameter: " + name);
+            return value;
+        }
+
+        private static void send(HttpExchange ex, int status, String json) throws IOException {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.sendResponseHeaders(status, body.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        private static String roomsJson(List<Room> rooms) {
+            StringJoiner json = new StringJoiner(",", "[", "]");
+            for (Room r : rooms) json.add(json(r));
+            return json.toString();
+        }
+
+        private static String json(Room r) {
+            return String.format(Locale.ROOT, "{\"id\":%d,\"category\":\"%s\",\"pricePerNight\":%.2f}",
+                    r.id, r.category, r.pricePerNight);
+        }
+
+        private static String json(Reservation r) {
+            return String.format(Locale.ROOT, "{\"id\":%s,\"room\":%d,\"guest\":%s,\"checkIn\":\"%s\","
+                            + "\"checkOut\":\"%s\",\"amount\":%.2f,\"status\":\"%s\"}",
+                    quote(r.reservationId), r.roomId, quote(r.guestName), r.checkIn, r.checkOut, r.amount, r.status);
+        }
+
+        private static String error(String message) {
+            return "{\"error\":" + quote(message) + "}";
+        }
+
+        private static String quote(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') sb.append('\\').append(c);
+                else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                else sb.append(c);
+            }
+            return sb.append('"').toString();
+        }
+    }
+
+    // ---------- Console UI ----------
+    static class ConsoleUI {
+        private final ReservationManager manager;
+        private final Scanner sc = new Scanner(System.in);
+        private final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+        public ConsoleUI(ReservationManager manager) {
+            this.manager = manager;
+        }
+
+        public void run() {
+            printHeader();
+            while (true) {
+                printMenu();
+                String choice = sc.nextLine().trim();
+                switch (choice) {
+                    case "1": handleSearchAndBook(); break;
+                    case "2": handleCancel(); break;
+                    case "3": handleViewBookingsByGuest(); break;
+                    case "4": handleViewReservationDetails(); break;
+                    case "5": showAllRooms(); break;
+                    case "0": exitApp(); return;
+                    default: System.out.println("Unknown option. Try again."); break;
+                }
+            }
+        }
+
+        private void printHeader() {
+            System.out.println("=== Hotel Reservation System ===");
+        }
+
+        private void printMenu() {
+            System.out.println("\nMenu:");
+            System.out.println("1) Search rooms & Book");
+            System.out.println("2) Cancel reservation");
+            System.out.println("3) View my bookings (by guest name)");
+            System.out.println("4) View booking details (by reservation id)");
+            System.out.println("5) List all rooms");
+            System.out.println("0) Exit");
+            System.out.print("Choose: ");
+        }
+
+        private void handleSearchAndBook() {
+            try {
+                System.out.print("Enter category (Standard/Deluxe/Suite): ");
+                Category cat = Category.fromString(sc.nextLine());
+                System.out.print("Check-in date (YYYY-MM-DD): ");
+                LocalDate in = LocalDate.parse(sc.nextLine().trim(), dtf);
+                System.out.print("Check-out date (YYYY-MM-DD): ");
+                LocalDate out = LocalDate.parse(sc.nextLine().trim(), dtf);
+
+                List<Room> avail = manager.searchAvailableRooms(cat, in, out);
+                if (avail.isEmpty()) {
+                    System.out.println("No available rooms found for those dates.");
+                    return;
+                }
+                System.out.println("Available rooms:");
+                for (Room r : avail) System.out.println(" - " + r);
 
                 System.out.print("Enter room id to book: ");
                 int roomId = Integer.parseInt(sc.nextLine().trim());
+                Room room = manager.getRoom(roomId);
+                if (room == null || !avail.contains(room)) {
+                    System.out.println("Room " + roomId + " is not one of the available rooms listed.");
+                    return;
+                }
                 System.out.print("Your full name: ");
                 String guest = sc.nextLine().trim();
 
@@ -332,17 +2948,24 @@ public class HotelReservationApp {
         }
 
         private void handleCancel() {
-            System.out.print("Enter reservation id to cancel (e.g. R1234): ");
+            System.out.print("Enter reservation id to cancel (e.g. R03JZ4069G5C): ");
             String id = sc.nextLine().trim();
-            manager.cancelReservation(id);
+            try {
+                manager.cancelReservation(id);
+            } catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+            }
         }
 
         private void handleViewBookingsByGuest() {
             System.out.print("Enter guest name: ");
             String name = sc.nextLine().trim();
             List<Reservation> list = manager.getReservationsForGuest(name);
-            if (list.isEmpty()) System.out.println("No reservations found for " + name);
-            else {
+            if (list.isEmpty()) {
+                System.out.println("No reservations found for " + name);
+                List<String> similar = manager.findGuestNames(name, 5);
+                if (!name.isEmpty() && !similar.isEmpty()) System.out.println("Did you mean: " + String.join(", ", similar));
+            } else {
                 System.out.println("Reservations:");
                 list.forEach(r -> System.out.println(" - " + r));
             }
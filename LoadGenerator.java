@@ -0,0 +1,230 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * LoadGenerator.java
+ * Drives a ReservationManager from many threads with synthetic, reproducible hotel traffic and
+ * reports throughput and latency percentiles per operation.
+ *
+ * Compile: javac HotelReservationApp.java LoadGenerator.java
+ * Run: java LoadGenerator [--rooms 3000] [--threads 8] [--duration 30] [--warmup 5]
+ *                         [--search-to-book 10] [--cancel-rate 0.12] [--payment-ms 0] [--seed 1]
+ *
+ * Traffic model: a guest searches one category for a stay, and every `search-to-book`-th search
+ * on average turns into a booking of the cheapest room found. Check-in dates follow a lead-time
+ * distribution shaped by monthly seasonality, stay lengths follow a short-stay-heavy distribution,
+ * and a share of confirmed bookings is cancelled later. The hotel is synthesized with rooms
+ * across all categories and starts with no reservations.
+ */
+public class LoadGenerator {
+
+    // relative demand per month, January first: summer and the December holidays peak
+    private static final double[] SEASONALITY = {0.6, 0.6, 0.75, 0.85, 0.95, 1.0, 1.0, 1.0, 0.85, 0.75, 0.65, 0.9};
+    // P(stay of 1..7 nights)
+    private static final double[] STAY_LENGTH = {0.30, 0.25, 0.18, 0.10, 0.07, 0.04, 0.06};
+    private static final double MEAN_LEAD_DAYS = 35;
+    // share of searches per category, in Category order
+    private static final double[] CATEGORY_MIX = {0.6, 0.3, 0.1};
+
+    private static final String[] OPS = {"search", "book", "cancel"};
+    private static final int SEARCH = 0, BOOK = 1, CANCEL = 2;
+
+    private static final PrintStream report = System.out;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        int roomCount = Integer.parseInt(opts.getOrDefault("rooms", "3000"));
+        int threads = Integer.parseInt(opts.getOrDefault("threads", "8"));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(opts.getOrDefault("duration", "30")));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(opts.getOrDefault("warmup", "5")));
+        int searchToBook = Integer.parseInt(opts.getOrDefault("search-to-book", "10"));
+        double cancelRate = Double.parseDouble(opts.getOrDefault("cancel-rate", "0.12"));
+        long paymentMillis = Long.parseLong(opts.getOrDefault("payment-ms", "0"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "1"));
+
+        Path dir = Files.createTempDirectory("hotel-load");
+        writeRooms(dir, roomCount, new SplittableRandom(seed));
+        HotelReservationApp.PaymentGateway gateway = paymentMillis == 0
+                ? amount -> CompletableFuture.completedFuture(true)
+                : amount -> CompletableFuture.supplyAsync(() -> true,
+                        CompletableFuture.delayedExecutor(paymentMillis, TimeUnit.MILLISECONDS));
+        HotelReservationApp.ReservationManager manager = new HotelReservationApp.ReservationManager(dir.toString(), gateway);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        manager.loadState();
+
+        report.printf("%d rooms, %d threads, %ds (+%ds warm-up), search:book %d:1, cancel rate %.2f, payment %d ms%n",
+                roomCount, threads, TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos),
+                searchToBook, cancelRate, paymentMillis);
+
+        long measureFrom = System.nanoTime() + warmupNanos;
+        long until = measureFrom + durationNanos;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<LatencyHistogram[]>> results = new ArrayList<>();
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom rnd = seeds.split();
+            results.add(pool.submit(() -> drive(manager, rnd, measureFrom, until, searchToBook, cancelRate)));
+        }
+        LatencyHistogram[] total = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+        for (Future<LatencyHistogram[]> f : results) {
+            LatencyHistogram[] h = f.get();
+            for (int op = 0; op < OPS.length; op++) total[op].add(h[op]);
+        }
+        pool.shutdown();
+        manager.close();
+        deleteRecursively(dir);
+
+        double seconds = durationNanos / 1e9;
+        report.printf("%-8s %10s %10s %10s %10s %10s %10s %10s%n", "op", "count", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (int op = 0; op < OPS.length; op++) {
+            LatencyHistogram h = total[op];
+            report.printf("%-8s %10d %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", OPS[op], h.count(), h.count() / seconds,
+                    h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3,
+                    h.percentile(99.9) / 1e3, h.max() / 1e3);
+        }
+    }
+
+    // One client thread: search, sometimes book, sometimes cancel an earlier booking
+    private static LatencyHistogram[] drive(HotelReservationApp.ReservationManager manager, SplittableRandom rnd,
+                                            long measureFrom, long until, int searchToBook, double cancelRate) {
+        LatencyHistogram[] histograms = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+        List<String> booked = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        HotelReservationApp.Category[] categories = HotelReservationApp.Category.values();
+        long now;
+        while ((now = System.nanoTime()) < until) {
+            LocalDate checkIn = today.plusDays(leadDays(rnd, today));
+            LocalDate checkOut = checkIn.plusDays(stayLength(rnd));
+            HotelReservationApp.Category category = categories[pick(rnd, CATEGORY_MIX)];
+
+            List<HotelReservationApp.Room> found = manager.searchAvailableRooms(category, checkIn, checkOut);
+            long end = System.nanoTime();
+            if (now >= measureFrom) histograms[SEARCH].record(end - now);
+
+            if (!found.isEmpty() && rnd.nextInt(searchToBook) == 0) {
+                HotelReservationApp.Room cheapest = Collections.min(found, Comparator.comparingDouble(r -> r.pricePerNight));
+                long start = System.nanoTime();
+                HotelReservationApp.Reservation res = manager.makeReservation(cheapest.id, "Guest " + rnd.nextInt(100_000), checkIn, checkOut);
+                end = System.nanoTime();
+                if (start >= measureFrom) histograms[BOOK].record(end - start);
+                if (res != null && res.status == HotelReservationApp.ReservationStatus.CONFIRMED) booked.add(res.reservationId);
+            }
+
+            if (!booked.isEmpty() && rnd.nextDouble() < cancelRate / searchToBook) {
+                String id = booked.remove(rnd.nextInt(booked.size()));
+                long start = System.nanoTime();
+                manager.cancelReservation(id);
+                end = System.nanoTime();
+                if (start >= measureFrom) histograms[CANCEL].record(end - start);
+            }
+        }
+        return histograms;
+    }
+
+    // Days from today to check-in: exponential lead time, thinned by the season of the check-in month
+    private static long leadDays(SplittableRandom rnd, LocalDate today) {
+        while (true) {
+            long lead = (long) (-Math.log(1 - rnd.nextDouble()) * MEAN_LEAD_DAYS);
+            if (lead > 540) continue;
+            int month = today.plusDays(lead).getMonthValue() - 1;
+            if (rnd.nextDouble() < SEASONALITY[month]) return lead;
+        }
+    }
+
+    private static int stayLength(SplittableRandom rnd) {
+        return 1 + pick(rnd, STAY_LENGTH);
+    }
+
+    private static int pick(SplittableRandom rnd, double[] weights) {
+        double x = rnd.nextDouble();
+        for (int i = 0; i < weights.length - 1; i++) {
+            x -= weights[i];
+            if (x < 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    // Rooms numbered by floor (x01..x99), mostly standard, with prices spread per category
+    private static void writeRooms(Path dir, int roomCount, SplittableRandom rnd) throws IOException {
+        HotelReservationApp.Category[] categories = HotelReservationApp.Category.values();
+        double[] basePrice = {40.0, 80.0, 150.0};
+        List<HotelReservationApp.Room> rooms = new ArrayList<>(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            int c = pick(rnd, CATEGORY_MIX);
+            rooms.add(new HotelReservationApp.Room((i / 99 + 1) * 100 + i % 99 + 1, categories[c],
+                    basePrice[c] + rnd.nextInt(20)));
+        }
+        HotelReservationApp.RecordCodec.saveRooms(dir.resolve("rooms.dat").toString(), rooms);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+
+    // Log-linear latency histogram in nanoseconds (same idea as HdrHistogram): values below 128
+    // are exact, larger ones land in one of 64 sub-buckets per power of two, so percentiles are
+    // within about 1.6%. Each thread fills its own and they are added together at the end.
+    static final class LatencyHistogram {
+        private static final int SUB_BITS = 6;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final long[] counts = new long[2 * SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS];
+        private long count;
+        private long max;
+
+        void record(long nanos) {
+            counts[index(Math.max(0, nanos))]++;
+            count++;
+            max = Math.max(max, nanos);
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        long count() {
+            return count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        // Upper edge of the bucket holding the given percentile
+        long percentile(double p) {
+            if (count == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(p / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) return Math.min(max, upperEdge(i));
+            }
+            return max;
+        }
+
+        private static int index(long v) {
+            if (v < 2 * SUB_BUCKETS) return (int) v;
+            int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+            return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((v >>> shift) - SUB_BUCKETS);
+        }
+
+        private static long upperEdge(int index) {
+            if (index < 2 * SUB_BUCKETS) return index;
+            int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+            long sub = SUB_BUCKETS + (index - 2 * SUB_BUCKETS) % SUB_BUCKETS;
+            return ((sub + 1) << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ReservationBenchmark.java
+ * Micro-benchmarks for the ReservationManager hot paths at several hotel sizes.
+ *
+ * Compile: javac HotelReservationApp.java ReservationBenchmark.java
+ * Run: java -Xmx4g ReservationBenchmark [--scale rooms:reservations]... [--filter name]
+ *   e.g. java -Xmx16g ReservationBenchmark --scale 5000:10000000 --filter search
+ *
+ * Each scale gets a generated data directory (rooms and a reservation store written directly,
+ * without going through bookings). Every benchmark runs warm-up iterations and then timed
+ * iterations in the same JVM and reports the mean time per operation with its spread.
+ * Payments are stubbed to approve instantly.
+ */
+public class ReservationBenchmark {
+
+    private static final String DEFAULT_SCALES = "10:1000,500:100000,5000:1000000";
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+    private static final HotelReservationApp.PaymentGateway INSTANT_PAYMENT = amount -> CompletableFuture.completedFuture(true);
+
+    // the manager reports every booking on stdout; results go to the real stdout instead
+    private static final PrintStream report = System.out;
+
+    interface Op {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<int[]> scales = new ArrayList<>();
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--scale")) scales.add(parseScale(args[++i]));
+            else if (args[i].equals("--filter")) filter = args[++i];
+            else throw new IllegalArgumentException("Unknown argument: " + args[i]);
+        }
+        if (scales.isEmpty()) {
+            for (String s : DEFAULT_SCALES.split(",")) scales.add(parseScale(s));
+        }
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        report.printf("%-28s %-16s %14s %12s %14s%n", "benchmark", "scale", "ns/op", "+/-", "ops/s");
+        for (int[] scale : scales) {
+            runScale(scale[0], scale[1], filter);
+        }
+    }
+
+    private static int[] parseScale(String s) {
+        String[] parts = s.split(":");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    private static void runScale(int roomCount, int reservationCount, String filter) throws Exception {
+        String scale = roomCount + "/" + reservationCount;
+        Path dir = Files.createTempDirectory("hotel-bench");
+        try {
+            List<String> ids = new ArrayList<>();
+            List<String> guests = new ArrayList<>();
+            generateHotel(dir, roomCount, reservationCount, ids, guests);
+
+            HotelReservationApp.ReservationManager manager = new HotelReservationApp.ReservationManager(dir.toString(), INSTANT_PAYMENT);
+            manager.loadState();
+            List<HotelReservationApp.Room> rooms = manager.rooms;
+            HotelReservationApp.Category[] categories = HotelReservationApp.Category.values();
+            LocalDate today = LocalDate.now();
+            SplittableRandom rnd = new SplittableRandom(42);
+
+            bench("searchAvailableRooms", scale, filter, () -> {
+                LocalDate from = today.plusDays(rnd.nextInt(365));
+                manager.searchAvailableRooms(categories[rnd.nextInt(categories.length)], from, from.plusDays(1 + rnd.nextInt(7)));
+            });
+            bench("cheapestAvailableRooms", scale, filter, () -> {
+                LocalDate from = today.plusDays(rnd.nextInt(365));
+                manager.cheapestAvailableRooms(categories[rnd.nextInt(categories.length)], from, from.plusDays(1 + rnd.nextInt(7)), 5);
+            });
+            bench("flexibleSearch", scale, filter, () -> {
+                LocalDate from = today.plusDays(3 + rnd.nextInt(365));
+                manager.flexibleSearch(from, from.plusDays(1 + rnd.nextInt(7)), 3);
+            });
+            bench("isRoomAvailable", scale, filter, () -> {
+                LocalDate from = today.plusDays(rnd.nextInt(365));
+                manager.isRoomAvailable(rooms.get(rnd.nextInt(rooms.size())).id, from, from.plusDays(1 + rnd.nextInt(7)));
+            });
+            bench("getReservationById", scale, filter, () -> manager.getReservationById(ids.get(rnd.nextInt(ids.size()))));
+            bench("getReservationsForGuest", scale, filter, () -> manager.getReservationsForGuest(guests.get(rnd.nextInt(guests.size()))));
+            bench("makeReservation", scale, filter, () -> {
+                LocalDate from = today.plusDays(rnd.nextInt(730));
+                manager.makeReservation(rooms.get(rnd.nextInt(rooms.size())).id, "Bench Guest", from, from.plusDays(1 + rnd.nextInt(4)));
+            });
+            bench("saveReservations", scale, filter, manager::saveReservations);
+            bench("loadState", scale, filter, () -> {
+                HotelReservationApp.ReservationManager loaded = new HotelReservationApp.ReservationManager(dir.toString(), INSTANT_PAYMENT);
+                loaded.loadState();
+                loaded.close();
+            });
+            manager.close();
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // Rooms across all categories, and a reservation history where every room has back-to-back
+    // stays running from the past into the future (80% confirmed, 15% cancelled, 5% failed).
+    private static void generateHotel(Path dir, int roomCount, int reservationCount,
+                                      List<String> ids, List<String> guests) throws IOException {
+        HotelReservationApp.Category[] categories = HotelReservationApp.Category.values();
+        List<HotelReservationApp.Room> rooms = new ArrayList<>(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            HotelReservationApp.Category category = categories[i % categories.length];
+            rooms.add(new HotelReservationApp.Room((i / 100 + 1) * 1000 + i % 100, category, 40.0 * (category.ordinal() + 1) + i % 10));
+        }
+        HotelReservationApp.RecordCodec.saveRooms(dir.resolve("rooms.dat").toString(), rooms);
+
+        int guestCount = Math.max(1, reservationCount / 5);
+        for (int i = 0; i < guestCount; i++) guests.add("Guest " + i);
+
+        SplittableRandom rnd = new SplittableRandom(7);
+        int perRoom = Math.max(1, reservationCount / roomCount);
+        long start = LocalDate.now().toEpochDay() - perRoom * 3L / 2; // about half the history is in the past
+        long[] nextDay = new long[roomCount];
+        Arrays.fill(nextDay, start);
+        HotelReservationApp.ReservationIdGenerator idGenerator = new HotelReservationApp.ReservationIdGenerator();
+        try (HotelReservationApp.ReservationStore store = HotelReservationApp.ReservationStore.open(
+                dir.resolve("reservations.dat").toString(), dir.resolve("guests.dat").toString())) {
+            for (int i = 0; i < reservationCount; i++) {
+                int room = i % roomCount;
+                long checkIn = nextDay[room] + rnd.nextInt(2);
+                long checkOut = checkIn + 1 + rnd.nextInt(4);
+                nextDay[room] = checkOut;
+                int roll = rnd.nextInt(100);
+                HotelReservationApp.ReservationStatus status = roll < 80 ? HotelReservationApp.ReservationStatus.CONFIRMED
+                        : roll < 95 ? HotelReservationApp.ReservationStatus.CANCELLED
+                        : HotelReservationApp.ReservationStatus.FAILED_PAYMENT;
+                HotelReservationApp.Room r = rooms.get(room);
+                String id = idGenerator.next();
+                store.append(new HotelReservationApp.Reservation(id, r.id, guests.get(rnd.nextInt(guestCount)),
+                        LocalDate.ofEpochDay(checkIn), LocalDate.ofEpochDay(checkOut),
+                        (checkOut - checkIn) * r.pricePerNight, status));
+                ids.add(id);
+            }
+            store.advanceLastIssuedId(idGenerator.lastIssued());
+        }
+    }
+
+    private static void bench(String name, String scale, String filter, Op op) throws Exception {
+        if (!name.toLowerCase(Locale.ROOT).contains(filter.toLowerCase(Locale.ROOT))) return;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) iteration(op);
+        double[] nsPerOp = new double[MEASURE_ITERATIONS];
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) nsPerOp[i] = iteration(op);
+
+        double mean = Arrays.stream(nsPerOp).average().orElse(0);
+        double variance = Arrays.stream(nsPerOp).map(x -> (x - mean) * (x - mean)).sum() / Math.max(1, nsPerOp.length - 1);
+        report.printf("%-28s %-16s %14.1f %12.1f %14.0f%n", name, scale, mean, Math.sqrt(variance), 1e9 / mean);
+    }
+
+    // Run `op` for about ITERATION_NANOS (at least once) and return the mean ns per call
+    private static double iteration(Op op) throws Exception {
+        long ops = 0;
+        long begin = System.nanoTime(), elapsed;
+        do {
+            op.run();
+            ops++;
+            elapsed = System.nanoTime() - begin;
+        } while (elapsed < ITERATION_NANOS);
+        return (double) elapsed / ops;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+}